@@ -3,7 +3,11 @@ package com.cse471.app;
 import com.cse471.file.FileManager;
 import com.cse471.file.FileInfo;
 import com.cse471.gui.MainFrame;
+import com.cse471.metrics.MetricsRegistry;
+import com.cse471.metrics.MetricsServer;
+import com.cse471.network.DhtNode;
 import com.cse471.network.DiscoveryManager;
+import com.cse471.network.GossipManager;
 import com.cse471.network.TransferManager;
 
 import javax.swing.*;
@@ -17,7 +21,11 @@ public class AppController {
 
     private FileManager fileManager;
     private DiscoveryManager discoveryManager;
+    private GossipManager gossipManager;
+    private DhtNode dhtNode;
+    private DownloadManager downloadManager;
     private TransferManager transferManager;
+    private MetricsServer metricsServer;
     private MainFrame mainFrame;
 
     private AppController() {
@@ -60,9 +68,22 @@ public class AppController {
                 transferManager = new TransferManager(fileManager, assignedPort);
                 transferManager.startServer();
 
-                discoveryManager = new DiscoveryManager(peerId, assignedPort);
+                discoveryManager = new DiscoveryManager(peerId, assignedPort, fileManager);
                 discoveryManager.start();
 
+                gossipManager = new GossipManager(peerId, assignedPort, transferManager);
+                transferManager.setGossipManager(gossipManager);
+                gossipManager.start();
+
+                dhtNode = new DhtNode(peerId, assignedPort, transferManager, fileManager::getLocalHashes);
+                transferManager.setDhtNode(dhtNode);
+                dhtNode.start();
+
+                downloadManager = new DownloadManager(fileManager, transferManager, dhtNode, mainFrame);
+
+                metricsServer = new MetricsServer(MetricsRegistry.getInstance());
+                metricsServer.start();
+
                 System.out.println("Network Started. ID: " + peerId + " Port: " + assignedPort);
                 if (mainFrame != null) {
                     JOptionPane.showMessageDialog(mainFrame, "Connected to P2P Network\nID: " + peerId);
@@ -78,12 +99,24 @@ public class AppController {
 
     // Ağı Durdur: Tüm servisleri kapatır ve kaynakları serbest bırakır.
     public void stopNetwork() {
+        if (downloadManager != null)
+            downloadManager.shutdown();
         if (discoveryManager != null)
             discoveryManager.stop();
+        if (gossipManager != null)
+            gossipManager.stop();
+        if (dhtNode != null)
+            dhtNode.stop();
         if (transferManager != null)
             transferManager.stop();
+        if (metricsServer != null)
+            metricsServer.stop();
         transferManager = null;
+        metricsServer = null;
         discoveryManager = null;
+        gossipManager = null;
+        dhtNode = null;
+        downloadManager = null;
         if (mainFrame != null) {
             JOptionPane.showMessageDialog(mainFrame, "Disconnected from Network.");
         }
@@ -92,6 +125,8 @@ public class AppController {
     public void setRootFolder(File folder) {
         if (fileManager != null) {
             fileManager.setRootFolder(folder);
+            if (dhtNode != null)
+                dhtNode.publishLocalContent();
             if (mainFrame != null) {
             }
         }
@@ -124,7 +159,10 @@ public class AppController {
                     .forEach(f -> uniqueFiles.put(f.getHash(), f));
 
             // 2. Remote Files
-            for (com.cse471.network.PeerInfo peer : com.cse471.network.PeerManager.getInstance().getAllPeers()) {
+            long fanOutStart = System.nanoTime();
+            for (com.cse471.network.PeerInfo peer : com.cse471.network.PeerManager.getInstance().getPeersByHealth()) {
+                if (com.cse471.network.PeerManager.getInstance().hasEmptyCatalog(peer.getId()))
+                    continue; // Announced an empty catalog, nothing to match
                 java.util.List<FileInfo> remoteFiles = transferManager.requestFileList(peer);
                 if (remoteFiles != null) {
                     remoteFiles.stream()
@@ -134,6 +172,8 @@ public class AppController {
                 }
             }
 
+            observeSearchFanOut(fanOutStart);
+
             // Convert back to List
             java.util.List<FileInfo> allFiles = new java.util.ArrayList<>(uniqueFiles.values());
 
@@ -160,7 +200,10 @@ public class AppController {
                 .forEach(f -> uniqueFiles.put(f.getHash(), f));
 
         // 2. Remote Files
-        for (com.cse471.network.PeerInfo peer : com.cse471.network.PeerManager.getInstance().getAllPeers()) {
+        long fanOutStart = System.nanoTime();
+        for (com.cse471.network.PeerInfo peer : com.cse471.network.PeerManager.getInstance().getPeersByHealth()) {
+            if (com.cse471.network.PeerManager.getInstance().hasEmptyCatalog(peer.getId()))
+                continue;
             java.util.List<FileInfo> remoteFiles = transferManager.requestFileList(peer);
             if (remoteFiles != null) {
                 remoteFiles.stream()
@@ -168,9 +211,17 @@ public class AppController {
                         .forEach(f -> uniqueFiles.putIfAbsent(f.getHash(), f));
             }
         }
+        observeSearchFanOut(fanOutStart);
         return new java.util.ArrayList<>(uniqueFiles.values());
     }
 
+    // Arama Süresi: Tüm peerlara dosya listesi sorulmasının toplam süresini
+    // metriklere ekler.
+    private void observeSearchFanOut(long startNanos) {
+        MetricsRegistry.getInstance().histogram("p2p_search_fanout_ms", "Time to query every live peer for a search")
+                .observe((System.nanoTime() - startNanos) / 1e6);
+    }
+
     // Helper for Exclusion Logic
     private boolean matchesExclusion(String filename, String pattern) {
         if (pattern == null || pattern.trim().isEmpty())
@@ -196,8 +247,8 @@ public class AppController {
         startDownload(fileInfo, true);
     }
 
-    // İndirmeyi Başlat: Dosya kaynaklarını bulur, yük dengeleme yapar ve dinamik
-    // bufferlama ile indirir.
+    // İndirmeyi Başlat: İndirmeyi yöneticinin kuyruğuna ekler. Aynı dosya zaten
+    // indiriliyorsa yeni bir indirme başlatılmaz.
     public void startDownload(FileInfo fileInfo, boolean playVideo) {
         if (transferManager == null || fileManager.getBufferFolder() == null) {
             String msg = "Network not started or Buffer Folder not set.";
@@ -208,123 +259,28 @@ public class AppController {
             return;
         }
 
-        // Start Download Thread
-        new Thread(() -> {
-            try {
-                // 1. Find sources for this file
-                java.util.List<com.cse471.network.PeerInfo> sources = new java.util.ArrayList<>();
-                for (com.cse471.network.PeerInfo peer : com.cse471.network.PeerManager.getInstance().getAllPeers()) {
-                    java.util.List<FileInfo> files = transferManager.requestFileList(peer);
-                    if (files != null && files.stream().anyMatch(f -> f.getHash().equals(fileInfo.getHash()))) {
-                        sources.add(peer);
-                    }
-                }
-
-                if (sources.isEmpty()) {
-                    String msg = "No sources found for file: " + fileInfo.getFileName();
-                    if (mainFrame != null) {
-                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mainFrame, msg));
-                    } else {
-                        System.out.println(msg);
-                    }
-                    return;
-                }
-
-                File targetFile = new File(fileManager.getBufferFolder(), fileInfo.getFileName());
-                int totalChunks = fileInfo.getTotalChunks(256 * 1024);
-
-                if (mainFrame != null) {
-                    SwingUtilities.invokeLater(() -> {
-                        mainFrame.log("Starting download: " + fileInfo.getFileName());
-                        mainFrame.addActiveStream(fileInfo.getFileName(), "Finding Sources...", "0%", "Starting");
-                    });
-                } else {
-                    System.out.println("Bot: Starting download -> " + fileInfo.getFileName());
-                }
+        // Queued behind other downloads; interactive playback goes first
+        downloadManager.submit(fileInfo,
+                playVideo ? DownloadManager.Priority.INTERACTIVE : DownloadManager.Priority.BACKGROUND, playVideo);
+    }
 
-                // 2. Playback Trigger
-                int bufferNeeded = 4;
-                long startTime = System.currentTimeMillis();
-
-                // Dynamic Buffering Variables
-                double avgLatency = 0;
-                int packetLossCount = 0;
-                final double ALPHA = 0.2; // Moving Average Weight
-
-                for (int i = 0; i < totalChunks; i++) {
-                    long chunkStart = System.currentTimeMillis();
-
-                    // Simple Load Balance: Round Robin
-                    com.cse471.network.PeerInfo source = sources.get(i % sources.size());
-
-                    byte[] data = transferManager.requestChunk(source, fileInfo.getHash(), i);
-                    long duration = System.currentTimeMillis() - chunkStart;
-
-                    // Dynamic Buffering Logic
-                    if (data != null) {
-                        // Update Exponential Moving Average of Latency
-                        if (i == 0)
-                            avgLatency = duration;
-                        else
-                            avgLatency = (ALPHA * duration) + ((1.0 - ALPHA) * avgLatency);
-
-                        // If network is slow (Latency > 500ms), increase buffer
-                        if (avgLatency > 500) {
-                            bufferNeeded = Math.min(totalChunks, bufferNeeded + 1);
-                            System.out.println("Network Slow (Lat: " + (int) avgLatency + "ms)! Increasing Buffer to: "
-                                    + bufferNeeded);
-                        }
-                    } else {
-                        // Packet Loss Detected
-                        packetLossCount++;
-                        // Penalize: Significantly increase buffer requirements on loss
-                        bufferNeeded = Math.min(totalChunks, bufferNeeded + 2);
-                        System.err.println("Packet Loss Detected! Increasing Buffer to: " + bufferNeeded);
-                    }
-
-                    if (data != null && data.length > 0) {
-                        fileManager.writeChunk(fileInfo.getFileName(), i, data);
-
-                        if (mainFrame != null) {
-                            final int currentChunk = i;
-                            final int total = totalChunks;
-                            SwingUtilities.invokeLater(() -> {
-                                // Calculate percentage
-                                int percent = (int) ((currentChunk + 1) * 100.0 / total);
-                                mainFrame.addActiveStream(fileInfo.getFileName(), source.getId(),
-                                        percent + "% (Chunk " + currentChunk + ")", "Downloading");
-                            });
-
-                            // Start Player if buffered enough AND playVideo is requested
-                            if (playVideo && i == bufferNeeded) {
-                                SwingUtilities.invokeLater(() -> {
-                                    mainFrame.getStreamPlayer().play(targetFile.getAbsolutePath());
-                                    mainFrame.log(">>> Starting Playback: " + fileInfo.getFileName());
-                                    mainFrame.addActiveStream(fileInfo.getFileName(), "Local Player", "Buffer Ready",
-                                            "Playing");
-                                });
-                            }
-                        } else {
-                            // Headless Log
-                            System.out.println("Bot: Downloaded Chunk " + i + " from " + source.getId());
-                        }
-                    } else {
-                        System.err.println("Failed to download chunk " + i);
-                    }
-                }
+    // İndirmeyi Duraklat / Devam Ettir / İptal Et: GUI tablosundaki dosya adına
+    // göre ilgili indirme görevini yönetir.
+    public void pauseDownload(String fileName) {
+        DownloadTask task = downloadManager != null ? downloadManager.findByFileName(fileName) : null;
+        if (task != null)
+            downloadManager.pause(task.getFileInfo().getHash());
+    }
 
-                if (mainFrame != null) {
-                    SwingUtilities.invokeLater(() -> {
-                        mainFrame.log("Download Complete: " + fileInfo.getFileName());
-                        mainFrame.addActiveStream(fileInfo.getFileName(), "All Sources", "100%", "Completed");
-                    });
-                } else {
-                    System.out.println("Bot: Download Complete -> " + fileInfo.getFileName());
-                }
+    public void resumeDownload(String fileName) {
+        DownloadTask task = downloadManager != null ? downloadManager.findByFileName(fileName) : null;
+        if (task != null)
+            downloadManager.resume(task.getFileInfo().getHash());
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+    public void cancelDownload(String fileName) {
+        DownloadTask task = downloadManager != null ? downloadManager.findByFileName(fileName) : null;
+        if (task != null)
+            downloadManager.cancel(task.getFileInfo().getHash());
     }
 }
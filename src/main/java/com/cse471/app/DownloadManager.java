@@ -0,0 +1,257 @@
+package com.cse471.app;
+
+import com.cse471.file.FileInfo;
+import com.cse471.file.FileManager;
+import com.cse471.gui.MainFrame;
+import com.cse471.network.DhtNode;
+import com.cse471.network.TokenBucket;
+import com.cse471.network.TransferManager;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DownloadManager {
+    private static final int MAX_ACTIVE = Integer.getInteger("p2p.maxDownloads", 3);
+    private static final long DOWNLOAD_LIMIT_KBPS = Long.getLong("p2p.downloadLimitKBps", 0); // 0 = Unlimited
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    // Interactive playback is scheduled before bot/background downloads
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private final FileManager fileManager;
+    private final TransferManager transferManager;
+    private final DhtNode dhtNode;
+    private final MainFrame mainFrame;
+    private final TokenBucket bandwidth; // Shared by all active downloads, null = unlimited
+
+    // All unfinished downloads by content hash (one task per hash)
+    private final Map<String, DownloadTask> tasks = new HashMap<>();
+    private final PriorityQueue<DownloadTask> queue = new PriorityQueue<>(
+            Comparator.comparing(DownloadTask::getPriority).thenComparingLong(DownloadTask::getSequence));
+    private final Set<DownloadTask> active = new HashSet<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Download-Task");
+        t.setDaemon(true);
+        return t;
+    });
+    private long nextSequence = 0;
+    private boolean shutdown = false;
+
+    // Yapıcı Metot: İndirme görevlerinin kullanacağı servisleri alır. Global
+    // hız sınırı -Dp2p.downloadLimitKBps ile verilir (0 = sınırsız).
+    public DownloadManager(FileManager fileManager, TransferManager transferManager, DhtNode dhtNode,
+            MainFrame mainFrame) {
+        this.fileManager = fileManager;
+        this.transferManager = transferManager;
+        this.dhtNode = dhtNode;
+        this.mainFrame = mainFrame;
+        if (DOWNLOAD_LIMIT_KBPS > 0) {
+            double rate = DOWNLOAD_LIMIT_KBPS * 1024.0;
+            this.bandwidth = new TokenBucket(rate, Math.max(rate, CHUNK_SIZE));
+        } else {
+            this.bandwidth = null;
+        }
+    }
+
+    // İndirme Ekle: Aynı hash için bitmemiş bir görev varsa onu döner (gerekirse
+    // önceliğini yükseltir). Yoksa yeni görevi kuyruğa alır. Etkileşimli bir
+    // istek boş yer bulamazsa en son başlamış arka plan görevi kuyruğa geri
+    // alınarak yer açılır.
+    public synchronized DownloadTask submit(FileInfo fileInfo, Priority priority, boolean playVideo) {
+        if (shutdown)
+            return null;
+        DownloadTask task = tasks.get(fileInfo.getHash());
+        if (task != null) {
+            if (playVideo)
+                task.enablePlayback();
+            if (priority.compareTo(task.getPriority()) < 0) {
+                boolean queued = queue.remove(task);
+                task.setPriority(priority);
+                if (queued)
+                    queue.add(task);
+            }
+            if (task.getState() == DownloadTask.State.PAUSED && priority == Priority.INTERACTIVE)
+                resume(fileInfo.getHash());
+            System.out.println("Download already in progress: " + fileInfo.getFileName() + " (" + task.getState()
+                    + ")");
+        } else {
+            task = new DownloadTask(this, fileInfo, priority, playVideo, nextSequence++);
+            tasks.put(fileInfo.getHash(), task);
+            queue.add(task);
+        }
+
+        if (task.getState() == DownloadTask.State.QUEUED) {
+            if (priority == Priority.INTERACTIVE && active.size() >= MAX_ACTIVE)
+                preemptBackground();
+            if (active.size() >= MAX_ACTIVE)
+                updateRow(task, "Waiting", "Queued");
+        }
+        schedule();
+        return task;
+    }
+
+    // Duraklat: Kuyruktaki görevi bekletir; çalışan görev sıradaki parçadan önce
+    // durur ve yerini boşaltır. İlerleme korunur.
+    public synchronized boolean pause(String hash) {
+        DownloadTask task = tasks.get(hash);
+        if (task == null)
+            return false;
+        if (task.getState() == DownloadTask.State.QUEUED) {
+            queue.remove(task);
+            task.setState(DownloadTask.State.PAUSED);
+            updateRow(task, "-", "Paused");
+            return true;
+        }
+        if (task.getState() == DownloadTask.State.ACTIVE) {
+            task.requestStop(DownloadTask.StopRequest.PAUSE);
+            return true;
+        }
+        return false;
+    }
+
+    // Devam Et: Duraklatılmış görevi önceliğine göre tekrar kuyruğa alır.
+    public synchronized boolean resume(String hash) {
+        DownloadTask task = tasks.get(hash);
+        if (task == null || task.getState() != DownloadTask.State.PAUSED)
+            return false;
+        task.setState(DownloadTask.State.QUEUED);
+        queue.add(task);
+        schedule();
+        return true;
+    }
+
+    // İptal Et: Görevi kuyruktan çıkarır veya çalışıyorsa sıradaki parçadan önce
+    // durdurur. Oturum kapatılır, oynatıcı beklemeyi bırakır.
+    public synchronized boolean cancel(String hash) {
+        DownloadTask task = tasks.get(hash);
+        if (task == null)
+            return false;
+        if (task.getState() == DownloadTask.State.ACTIVE) {
+            task.requestStop(DownloadTask.StopRequest.CANCEL);
+            return true;
+        }
+        queue.remove(task);
+        tasks.remove(hash);
+        task.setState(DownloadTask.State.CANCELLED);
+        task.closeSession();
+        updateRow(task, "-", "Cancelled");
+        return true;
+    }
+
+    // Dosya Adıyla Bul: GUI tablosu yalnızca dosya adını bildiği için kullanılır.
+    public synchronized DownloadTask findByFileName(String fileName) {
+        for (DownloadTask task : tasks.values()) {
+            if (task.getFileInfo().getFileName().equals(fileName))
+                return task;
+        }
+        return null;
+    }
+
+    public synchronized List<DownloadTask> getTasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    // Kapat: Ağ durdurulurken tüm görevleri iptal eder.
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            for (String hash : new ArrayList<>(tasks.keySet()))
+                cancel(hash);
+        }
+        executor.shutdown();
+    }
+
+    // Zamanla: Boş yer oldukça kuyruğun başındaki (en yüksek öncelikli, en eski)
+    // görevi başlatır.
+    private void schedule() {
+        while (!shutdown && active.size() < MAX_ACTIVE && !queue.isEmpty()) {
+            DownloadTask next = queue.poll();
+            next.setState(DownloadTask.State.ACTIVE);
+            active.add(next);
+            executor.execute(next);
+        }
+    }
+
+    // Yer Aç: Çalışan arka plan görevlerinden en son başlatılanı kuyruğa geri
+    // gönderir (durması bir parça sürebilir; yer o zaman boşalır).
+    private void preemptBackground() {
+        DownloadTask victim = null;
+        for (DownloadTask task : active) {
+            if (task.getPriority() == Priority.BACKGROUND
+                    && (victim == null || task.getSequence() > victim.getSequence()))
+                victim = task;
+        }
+        if (victim != null) {
+            victim.requestStop(DownloadTask.StopRequest.PREEMPT);
+            System.out.println("Preempting background download: " + victim.getFileInfo().getFileName());
+        }
+    }
+
+    // Görev Durdu: Çalışan görev bittiğinde, duraklatıldığında veya yer açmak için
+    // durdurulduğunda çağrılır. Yer boşalınca sıradaki görev başlatılır.
+    synchronized void onTaskStopped(DownloadTask task, DownloadTask.State outcome) {
+        active.remove(task);
+        task.requestStop(DownloadTask.StopRequest.NONE);
+        if (outcome == DownloadTask.State.QUEUED && !shutdown) {
+            task.setState(DownloadTask.State.QUEUED);
+            queue.add(task);
+            updateRow(task, "Waiting", "Queued");
+        } else if (outcome == DownloadTask.State.PAUSED && !shutdown) {
+            task.setState(DownloadTask.State.PAUSED);
+            updateRow(task, "-", "Paused");
+        } else {
+            task.setState(outcome == DownloadTask.State.PAUSED || outcome == DownloadTask.State.QUEUED
+                    ? DownloadTask.State.CANCELLED
+                    : outcome);
+            task.closeSession();
+            tasks.remove(task.getFileInfo().getHash(), task);
+            if (outcome == DownloadTask.State.CANCELLED)
+                updateRow(task, "-", "Cancelled");
+        }
+        schedule();
+    }
+
+    // Bant Genişliği Al: Global sınır varsa, parçayı istemeden önce payına
+    // düşen jetonları bekler.
+    void acquireBandwidth(int bytes) throws InterruptedException {
+        if (bandwidth != null)
+            bandwidth.acquire(bytes);
+    }
+
+    private void updateRow(DownloadTask task, String source, String status) {
+        if (mainFrame != null) {
+            int percent = task.getProgressPercent();
+            SwingUtilities.invokeLater(() -> mainFrame.addActiveStream(task.getFileInfo().getFileName(), source,
+                    percent + "%", status));
+        } else {
+            System.out.println("Bot: " + status + " -> " + task.getFileInfo().getFileName());
+        }
+    }
+
+    FileManager getFileManager() {
+        return fileManager;
+    }
+
+    TransferManager getTransferManager() {
+        return transferManager;
+    }
+
+    DhtNode getDhtNode() {
+        return dhtNode;
+    }
+
+    MainFrame getMainFrame() {
+        return mainFrame;
+    }
+}
@@ -0,0 +1,504 @@
+package com.cse471.app;
+
+import com.cse471.file.ChunkStore;
+import com.cse471.file.ContentId;
+import com.cse471.file.DownloadSession;
+import com.cse471.file.FileInfo;
+import com.cse471.file.FileManager;
+import com.cse471.file.ReedSolomon;
+import com.cse471.gui.MainFrame;
+import com.cse471.metrics.MetricsRegistry;
+import com.cse471.network.DhtNode;
+import com.cse471.network.PeerInfo;
+import com.cse471.network.PeerManager;
+import com.cse471.network.TransferManager;
+import com.cse471.player.BufferingController;
+import com.cse471.player.Mp4Probe;
+
+import javax.swing.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class DownloadTask implements Runnable {
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_INDEX_CHUNKS = 64; // Up to 16 MB of MP4 index fetched ahead of the media
+    private static final long BUSY_WAIT_MS = 1000; // All sources busy
+    private static final int PIPELINE_DEPTH = 4; // Chunks requested from one source per connection
+    // Erasure coding: lost chunks are rebuilt from repair blocks of their group
+    private static final boolean FEC = Boolean.getBoolean("p2p.fec");
+    private static final int FEC_GROUP = Math.max(2, Math.min(64, Integer.getInteger("p2p.fecGroupSize", 8)));
+    private static final int FEC_MAX_REPAIR = Integer.getInteger("p2p.fecMaxRepair", 4); // Per group, else plain retry
+
+    public enum State {
+        QUEUED, ACTIVE, PAUSED, COMPLETED, FAILED, CANCELLED
+    }
+
+    // Why the loop should stop before the file is complete
+    enum StopRequest {
+        NONE, PAUSE, PREEMPT, CANCEL
+    }
+
+    private final DownloadManager manager;
+    private final FileInfo fileInfo;
+    private final long sequence; // Submission order, ties within a priority
+    private volatile DownloadManager.Priority priority;
+    private volatile boolean playVideo;
+    private volatile State state = State.QUEUED;
+    private volatile StopRequest stopRequest = StopRequest.NONE;
+
+    // Progress survives pause/resume: the session keeps the received bitmap
+    private DownloadSession session;
+    private BufferingController buffering;
+    private List<PeerInfo> sources = new ArrayList<>();
+    private boolean playbackStarted = false;
+    private int moovChunk = -1; // Chunk holding the MP4 index (moov), -1 if none
+    private long moovOffset = -1;
+    private int fetchCount = 0;
+    private ContentId[] manifest; // Chunk ids from a source, only with -Dp2p.chunkStore
+    private final Map<Integer, TreeSet<Integer>> lostByGroup = new HashMap<>(); // Group's first chunk -> lost chunks
+    private int lastLoggedPercent = -1; // Headless progress is printed in 10% steps
+
+    DownloadTask(DownloadManager manager, FileInfo fileInfo, DownloadManager.Priority priority, boolean playVideo,
+            long sequence) {
+        this.manager = manager;
+        this.fileInfo = fileInfo;
+        this.priority = priority;
+        this.playVideo = playVideo;
+        this.sequence = sequence;
+    }
+
+    public FileInfo getFileInfo() {
+        return fileInfo;
+    }
+
+    public DownloadManager.Priority getPriority() {
+        return priority;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // İlerleme: Alınan parça oranı (0-100).
+    public int getProgressPercent() {
+        DownloadSession s = session;
+        if (s == null || s.getTotalChunks() == 0)
+            return 0;
+        return (int) (s.getReceivedCount() * 100.0 / s.getTotalChunks());
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void setPriority(DownloadManager.Priority priority) {
+        this.priority = priority;
+    }
+
+    void enablePlayback() {
+        this.playVideo = true;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void requestStop(StopRequest request) {
+        this.stopRequest = request;
+    }
+
+    // Oturumu Kapat: İptal edilen veya biten indirmede oynatıcıyı bekletmemek için
+    // oturumu kapatır.
+    void closeSession() {
+        if (session != null)
+            session.close();
+    }
+
+    // Çalıştır: Kaynakları bulur, parçaları global bant genişliği payından
+    // harcayarak indirir ve duraklatma/iptal isteklerini parçalar arasında
+    // kontrol eder. Sonucu yöneticiye bildirir.
+    @Override
+    public void run() {
+        State outcome = State.FAILED;
+        try {
+            outcome = download();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            manager.onTaskStopped(this, outcome);
+        }
+    }
+
+    private State download() throws Exception {
+        FileManager fileManager = manager.getFileManager();
+        TransferManager transferManager = manager.getTransferManager();
+
+        // 1. Find sources (again after a pause, the swarm may have changed)
+        sources = findSources();
+        if (sources.isEmpty()) {
+            report("No sources found for file: " + fileInfo.getFileName(), "None", "0%", "Failed");
+            return State.FAILED;
+        }
+
+        if (session == null) {
+            fileManager.preallocate(fileInfo.getFileName(), fileInfo.getFileSize());
+            session = new DownloadSession(fileInfo, CHUNK_SIZE);
+            // The player reads from the session and blocks on missing chunks; the
+            // buffering controller decides how much to prebuffer from the measured
+            // download rate and the video's bitrate
+            buffering = new BufferingController(fileInfo.getFileSize(), CHUNK_SIZE, session.getTotalChunks());
+            report("Starting download: " + fileInfo.getFileName(), "Finding Sources...", "0%", "Starting");
+        } else {
+            report("Resuming download: " + fileInfo.getFileName(), "Resumed", getProgressPercent() + "%",
+                    "Downloading");
+        }
+
+        if (ChunkStore.ENABLED && manifest == null)
+            manifest = fetchManifest(transferManager);
+
+        int i;
+        do {
+            while ((i = session.nextChunk()) >= 0) {
+                StopRequest stop = stopRequest;
+                if (stop != StopRequest.NONE) {
+                    session.requestPriority(i); // Not fetched, pick it up first on resume
+                    return stop == StopRequest.CANCEL ? State.CANCELLED
+                            : stop == StopRequest.PREEMPT ? State.QUEUED : State.PAUSED;
+                }
+                requeueFailedWrites();
+
+                // Deduplication: a chunk we already share in any local file is copied, not fetched
+                if (manifest != null && fileManager.getChunkStore().find(manifest[i]) != null) {
+                    ByteBuffer local = null;
+                    try {
+                        local = fileManager.getChunkById(manifest[i], null);
+                    } catch (java.io.IOException e) {
+                        // Fall through to the network
+                    }
+                    if (local != null && local.hasRemaining()) {
+                        handleChunk(i, local, -1, "Local Store");
+                        continue;
+                    }
+                    fileManager.getBufferPool().release(local);
+                }
+
+                // Simple Load Balance: Round Robin, skipping sources that said "busy"
+                PeerInfo source = nextSource(transferManager);
+                if (source == null) {
+                    // Every source is choking us: wait a moment instead of spinning
+                    session.requestPriority(i);
+                    Thread.sleep(BUSY_WAIT_MS);
+                    continue;
+                }
+
+                // Pipelining: the next few chunks go to the same source in one round trip
+                List<Integer> batch = nextBatch(i);
+
+                // Global bandwidth share: every active download draws from one bucket
+                manager.acquireBandwidth(CHUNK_SIZE * batch.size());
+                long batchStart = System.currentTimeMillis();
+
+                Map<Integer, ByteBuffer> received = transferManager.requestChunks(source, fileInfo.getHash(), batch,
+                        manifest);
+                long duration = (System.currentTimeMillis() - batchStart) / batch.size();
+                if (!received.isEmpty())
+                    MetricsRegistry.getInstance().histogram("p2p_chunk_fetch_ms",
+                            "Time to fetch one chunk from a peer (pipelined batches are split evenly)", "peer",
+                            source.getId()).observe(duration);
+                boolean busy = transferManager.isBusy(source);
+
+                for (int index : batch) {
+                    ByteBuffer data = received.get(index);
+                    if (data == null && busy) {
+                        // Choked, not lost: retry the chunk elsewhere without counting an attempt
+                        session.requestPriority(index);
+                        continue;
+                    }
+                    if (data != null && manifest != null && !ChunkStore.idOf(data).equals(manifest[index])) {
+                        System.err.println(
+                                "Chunk " + index + " from " + source.getId() + " does not match the manifest");
+                        fileManager.getBufferPool().release(data);
+                        data = null;
+                    }
+                    if (data == null && FEC) {
+                        // Lost: no per-chunk retry, the group is repaired once the rest of it is here
+                        buffering.onChunkFailed();
+                        lostByGroup.computeIfAbsent(index - index % FEC_GROUP, g -> new TreeSet<>()).add(index);
+                        continue;
+                    }
+                    handleChunk(index, data, duration, source.getId());
+                }
+                if (FEC)
+                    repairGroups(transferManager);
+            }
+            // Every queued write has landed or failed; failed chunks are fetched again
+            fileManager.flushWrites(fileInfo.getFileName());
+        } while (requeueFailedWrites());
+
+        session.close();
+        if (stopRequest == StopRequest.CANCEL)
+            return State.CANCELLED;
+        if (!session.isComplete()) {
+            report("Download Failed: " + fileInfo.getFileName() + " (" + session.getReceivedCount() + "/"
+                    + session.getTotalChunks() + " chunks)", "All Sources", getProgressPercent() + "%", "Failed");
+            return State.FAILED;
+        }
+        report("Download Complete: " + fileInfo.getFileName(), "All Sources", "100%", "Completed");
+        return State.COMPLETED;
+    }
+
+    // Yazma Hatalarını Geri Al: Write-behind kuyruğunda diske yazılamayan
+    // parçaları oturuma alınmamış olarak geri verir. Geri verilen varsa true.
+    private boolean requeueFailedWrites() {
+        BitSet failed = manager.getFileManager().takeFailedWrites(fileInfo.getFileName());
+        for (int index = failed.nextSetBit(0); index >= 0; index = failed.nextSetBit(index + 1)) {
+            System.err.println("Chunk " + index + " was not written to disk, downloading it again");
+            session.markLost(index);
+        }
+        return !failed.isEmpty();
+    }
+
+    // Toplu Parça: Verilen parçayla birlikte sıradaki en fazla PIPELINE_DEPTH
+    // parçayı seçer. Oturum başa döndüğünde (aynı parça tekrar gelince) durur.
+    private List<Integer> nextBatch(int first) {
+        List<Integer> batch = new ArrayList<>(PIPELINE_DEPTH);
+        batch.add(first);
+        while (batch.size() < PIPELINE_DEPTH) {
+            int next = session.nextChunk();
+            if (next < 0)
+                break;
+            if (batch.contains(next))
+                break; // Wrapped around, the rest is already in this batch
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    // Parça İşle: Gelen parçayı tamponlama ölçümüne ekler, MP4 indeksini
+    // yakalar, önce önbelleğe sonra diske yazar ve ilerlemeyi bildirir. Parça
+    // gelmediyse deneme sayısını artırır. Yerel kopyalarda (duration < 0) hız
+    // ölçülmez.
+    private void handleChunk(int i, ByteBuffer data, long duration, String sourceName) throws Exception {
+        FileManager fileManager = manager.getFileManager();
+        MainFrame mainFrame = manager.getMainFrame();
+
+        // Dynamic Buffering Logic
+        if (data != null) {
+            if (duration >= 0)
+                buffering.onChunkReceived(data.remaining(), duration);
+        } else {
+            // Packet Loss Detected
+            buffering.onChunkFailed();
+        }
+
+        if (data != null && data.hasRemaining()) {
+            if (i == 0) {
+                // Fetch the container index right after the header, so playback can
+                // start even when the file was muxed with moov at the end
+                Mp4Probe probe = Mp4Probe.probe(data, fileInfo.getFileSize());
+                if (probe != null && probe.getDurationMs() > 0) {
+                    buffering.setMediaDuration(probe.getDurationMs());
+                } else if (probe != null && probe.getMoovOffset() > 0) {
+                    moovOffset = probe.getMoovOffset();
+                    moovChunk = (int) (moovOffset / CHUNK_SIZE);
+                    session.prioritizeRange(moovOffset, fileInfo.getFileSize(), MAX_INDEX_CHUNKS);
+                    System.out.println("MP4 index at offset " + moovOffset + ", fetching chunk "
+                            + moovChunk + " next");
+                }
+            } else if (i == moovChunk) {
+                long mediaDuration = Mp4Probe.parseMoovDuration(data,
+                        data.position() + (int) (moovOffset - (long) i * CHUNK_SIZE));
+                buffering.setMediaDuration(mediaDuration);
+            }
+
+            // Memory first if the player will read it soon, then disk
+            if (playVideo && session.isNearPlayback(i))
+                fileManager.cacheChunk(fileInfo.getHash(), i, data);
+            fileManager.writeChunkAsync(fileInfo.getFileName(), i, data);
+            session.markReceived(i);
+
+            if (mainFrame != null) {
+                final int percent = getProgressPercent();
+                final int currentChunk = i;
+                SwingUtilities.invokeLater(() -> mainFrame.addActiveStream(fileInfo.getFileName(),
+                        sourceName, percent + "% (Chunk " + currentChunk + ")", "Downloading"));
+
+                // Start Player if buffered enough AND playVideo is requested
+                if (playVideo && !playbackStarted && buffering.isReadyToPlay(session.getContiguousChunks())) {
+                    playbackStarted = true;
+                    String decision = buffering.getLastDecision();
+                    DownloadSession playing = session;
+                    SwingUtilities.invokeLater(() -> {
+                        mainFrame.getStreamPlayer().play(playing, fileManager);
+                        mainFrame.log(">>> Starting Playback: " + fileInfo.getFileName() + " (" + decision
+                                + ")");
+                        mainFrame.addActiveStream(fileInfo.getFileName(), "Local Player", "Buffer Ready",
+                                "Playing");
+                    });
+                }
+            } else {
+                // Headless Log: per-chunk detail lives in the metrics, the console only shows progress
+                int percent = getProgressPercent();
+                if (percent / 10 > lastLoggedPercent / 10) {
+                    lastLoggedPercent = percent;
+                    System.out.println("Bot: " + fileInfo.getFileName() + " " + percent + "% ("
+                            + session.getReceivedCount() + "/" + session.getTotalChunks() + " chunks)");
+                }
+            }
+        } else {
+            fileManager.getBufferPool().release(data);
+            session.markFailed(i);
+            System.err.println("Failed to download chunk " + i);
+        }
+    }
+
+    // Grupları Onar: Kayıp parçası olan ve geri kalanı gelmiş her grup için
+    // kayıp sayısı kadar onarım bloğunu (farklı numaralarla, farklı
+    // kaynaklardan) ister ve eksikleri Reed-Solomon ile yeniden oluşturur.
+    // Onarılamayan parçalar normal yeniden deneme yoluna bırakılır.
+    private void repairGroups(TransferManager transferManager) throws Exception {
+        for (Iterator<Map.Entry<Integer, TreeSet<Integer>>> it = lostByGroup.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, TreeSet<Integer>> group = it.next();
+            int first = group.getKey();
+            int k = Math.min(FEC_GROUP, session.getTotalChunks() - first);
+            group.getValue().removeIf(session::hasChunk); // Fetched directly in the meantime
+            List<Integer> missing = new ArrayList<>();
+            for (int index = first; index < first + k; index++) {
+                if (!session.hasChunk(index))
+                    missing.add(index);
+            }
+            if (!group.getValue().containsAll(missing))
+                continue; // Rest of the group not fetched yet
+            it.remove();
+            if (missing.isEmpty())
+                continue;
+            if (missing.size() > FEC_MAX_REPAIR || !repairGroup(transferManager, first, k, missing)) {
+                for (int index : missing)
+                    session.markFailed(index);
+                System.err.println("Could not repair chunks " + missing + ", retrying them");
+            }
+        }
+    }
+
+    private boolean repairGroup(TransferManager transferManager, int first, int k, List<Integer> missing)
+            throws Exception {
+        FileManager fileManager = manager.getFileManager();
+        int shardSize = (int) Math.min(CHUNK_SIZE, fileInfo.getFileSize() - (long) first * CHUNK_SIZE);
+        Map<Integer, byte[]> shards = new HashMap<>();
+
+        // Repair blocks: one per lost chunk, each from the next source that answers
+        int parityIndex = 0;
+        for (int attempt = 0; attempt < sources.size() * missing.size()
+                && parityIndex < missing.size(); attempt++) {
+            PeerInfo source = nextSource(transferManager);
+            if (source == null)
+                return false;
+            manager.acquireBandwidth(shardSize);
+            byte[] block = transferManager.requestRepairBlock(source, fileInfo.getHash(), first, k, parityIndex);
+            if (block != null && block.length == shardSize)
+                shards.put(k + parityIndex++, block);
+        }
+        if (parityIndex < missing.size())
+            return false;
+
+        // Data chunks we have, zero-padded to the group's shard size
+        ByteBuffer buffer = fileManager.getBufferPool().acquire();
+        try {
+            for (int i = 0; i < k; i++) {
+                if (missing.contains(first + i))
+                    continue;
+                fileManager.readDownloadedChunk(session, first + i, buffer);
+                byte[] shard = new byte[shardSize];
+                buffer.get(shard, 0, Math.min(shardSize, buffer.remaining()));
+                shards.put(i, shard);
+            }
+        } finally {
+            fileManager.getBufferPool().release(buffer);
+        }
+
+        Map<Integer, byte[]> recovered = ReedSolomon.reconstruct(shards, k, shardSize);
+        if (recovered == null)
+            return false;
+        for (Map.Entry<Integer, byte[]> entry : recovered.entrySet()) {
+            int index = first + entry.getKey();
+            int length = (int) Math.min(CHUNK_SIZE, fileInfo.getFileSize() - (long) index * CHUNK_SIZE);
+            byte[] bytes = entry.getValue();
+            if (manifest != null && !ChunkStore.idOf(ByteBuffer.wrap(bytes, 0, length)).equals(manifest[index]))
+                return false;
+            ByteBuffer data = fileManager.getBufferPool().acquire();
+            data.put(bytes, 0, length);
+            data.flip();
+            handleChunk(index, data, -1, "FEC Repair");
+        }
+        System.out.println("Repaired chunks " + missing + " from " + missing.size() + " repair blocks");
+        return true;
+    }
+
+    // Manifest Al: Kaynaklardan dosyanın parça kimliklerini ister; parça sayısı
+    // dosyaya uyan ilk cevabı döner. Hiçbiri vermezse null (dosya bazlı indirme).
+    private ContentId[] fetchManifest(TransferManager transferManager) {
+        for (PeerInfo source : sources) {
+            ContentId[] candidate = transferManager.requestManifest(source, fileInfo.getHash());
+            if (candidate != null && candidate.length == session.getTotalChunks())
+                return candidate;
+        }
+        return null;
+    }
+
+    // Sıradaki Kaynak: Round robin ile "meşgul" olmayan ilk kaynağı döner;
+    // hepsi meşgulse null.
+    private PeerInfo nextSource(TransferManager transferManager) {
+        for (int n = 0; n < sources.size(); n++) {
+            PeerInfo candidate = sources.get(fetchCount++ % sources.size());
+            if (!transferManager.isBusy(candidate))
+                return candidate;
+        }
+        return null;
+    }
+
+    // Kaynak Bul: Önce DHT'ye sorar; kayıt yoksa katalog filtresi hash'i
+    // dışlamayan canlı peerların dosya listelerine bakar.
+    private List<PeerInfo> findSources() {
+        List<PeerInfo> found = new ArrayList<>();
+        DhtNode dhtNode = manager.getDhtNode();
+        if (dhtNode != null) {
+            DhtNode.LookupResult lookup = dhtNode.findProviders(fileInfo.getHash());
+            found.addAll(lookup.getProviders());
+            MetricsRegistry.getInstance().histogram("p2p_dht_lookup_ms", "DHT provider lookup latency")
+                    .observe(lookup.getElapsedMs());
+            System.out.println("DHT lookup: " + found.size() + " sources in " + lookup.getHops() + " hops ("
+                    + lookup.getContacted() + " nodes, " + lookup.getElapsedMs() + " ms)");
+        }
+        if (!found.isEmpty())
+            return found;
+
+        // Peers whose announced catalog filter rules the hash out are not asked
+        for (PeerInfo peer : PeerManager.getInstance().getPeersByHealth()) {
+            if (!PeerManager.getInstance().mightHave(peer.getId(), fileInfo.getHash()))
+                continue;
+            List<FileInfo> files = manager.getTransferManager().requestFileList(peer);
+            if (files != null && files.stream().anyMatch(f -> f.getHash().equals(fileInfo.getHash())))
+                found.add(peer);
+        }
+        return found;
+    }
+
+    // Durum Bildir: GUI varsa log ve tabloya, yoksa konsola yazar.
+    private void report(String message, String source, String progress, String status) {
+        MainFrame mainFrame = manager.getMainFrame();
+        if (mainFrame != null) {
+            SwingUtilities.invokeLater(() -> {
+                mainFrame.log(message);
+                mainFrame.addActiveStream(fileInfo.getFileName(), source, progress, status);
+            });
+        } else {
+            System.out.println("Bot: " + message);
+        }
+    }
+}
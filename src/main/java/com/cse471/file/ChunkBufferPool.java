@@ -0,0 +1,162 @@
+package com.cse471.file;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChunkBufferPool {
+    private static final boolean DEBUG = Boolean.getBoolean("p2p.debugBuffers");
+    private static final long LEAK_THRESHOLD_MS = 30_000;
+    private static final int STAGING_SIZE = 64 * 1024;
+
+    // Per-thread copy buffer between socket streams and direct buffers. Reused, so
+    // moving a chunk does not allocate.
+    private static final ThreadLocal<byte[]> STAGING = ThreadLocal.withInitial(() -> new byte[STAGING_SIZE]);
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    // Debug Mode: Buffer -> Stack trace of the acquiring call (long-lived owners
+    // are kept here for double-release checks but never reported as leaks)
+    private final Map<ByteBuffer, Acquisition> outstanding = new IdentityHashMap<>();
+
+    // Yapıcı Metot: Tampon boyutunu (parça boyutu) ve havuzda tutulacak en fazla
+    // boş tampon sayısını belirler.
+    public ChunkBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.freeBuffers = new ArrayBlockingQueue<>(maxPooled);
+        if (DEBUG) {
+            ScheduledExecutorService leakChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "BufferPool-LeakCheck");
+                t.setDaemon(true);
+                return t;
+            });
+            leakChecker.scheduleWithFixedDelay(this::reportLeaks, LEAK_THRESHOLD_MS, LEAK_THRESHOLD_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Tampon Al: Havuzdan boş bir direct tampon verir; havuz boşsa yenisini
+    // oluşturur. İş bitince release() ile iade edilmelidir.
+    public ByteBuffer acquire() {
+        return acquire(false);
+    }
+
+    // Uzun Ömürlü Tampon Al: Önbellek yuvası veya oynatıcının okuma tamponu
+    // gibi kasıtlı olarak uzun süre tutulan tamponlar içindir; debug modunda
+    // sızıntı raporuna girmez. İadesi yine release() ile yapılır.
+    public ByteBuffer acquireLongLived() {
+        return acquire(true);
+    }
+
+    private ByteBuffer acquire(boolean longLived) {
+        acquisitions.incrementAndGet();
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        if (DEBUG) {
+            synchronized (outstanding) {
+                outstanding.put(buffer, new Acquisition(longLived));
+            }
+        }
+        return buffer;
+    }
+
+    // Tampon İade: Tamponu tekrar kullanılmak üzere havuza geri koyar. Havuz
+    // doluysa tampon bırakılır (GC toplar).
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || !buffer.isDirect())
+            return;
+        if (DEBUG) {
+            synchronized (outstanding) {
+                if (outstanding.remove(buffer) == null) {
+                    new IllegalStateException("Buffer released twice or not from this pool").printStackTrace();
+                    return;
+                }
+            }
+        }
+        buffer.clear();
+        freeBuffers.offer(buffer);
+    }
+
+    // Sızıntı Raporu (Debug): Uzun süredir iade edilmeyen tamponları, alındıkları
+    // yerin stack trace'i ile birlikte yazdırır.
+    private void reportLeaks() {
+        long now = System.currentTimeMillis();
+        synchronized (outstanding) {
+            for (Acquisition acquisition : outstanding.values()) {
+                if (!acquisition.longLived && now - acquisition.time > LEAK_THRESHOLD_MS) {
+                    System.err.println("ChunkBufferPool: buffer held for " + (now - acquisition.time)
+                            + " ms, possible leak. Acquired at:");
+                    acquisition.site.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    // Toplam Tahsis: Havuzun yeni tampon oluşturmak zorunda kaldığı sayı (düşük
+    // olması beklenir).
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    public int getPooledCount() {
+        return freeBuffers.size();
+    }
+
+    // Akıştan Oku: Akıştan tam olarak length bayt okuyup tampona yazar (ara kopya
+    // için thread'e ait tekrar kullanılan dizi kullanılır).
+    public static void readFully(DataInputStream in, ByteBuffer dst, int length) throws IOException {
+        byte[] staging = STAGING.get();
+        int remaining = length;
+        while (remaining > 0) {
+            int n = Math.min(remaining, staging.length);
+            in.readFully(staging, 0, n);
+            dst.put(staging, 0, n);
+            remaining -= n;
+        }
+    }
+
+    // Akışa Yaz: Tamponun kalan içeriğini akışa yazar, tamponun konumunu
+    // değiştirmez.
+    public static void writeTo(OutputStream out, ByteBuffer src) throws IOException {
+        byte[] staging = STAGING.get();
+        ByteBuffer view = src.duplicate();
+        while (view.hasRemaining()) {
+            int n = Math.min(view.remaining(), staging.length);
+            view.get(staging, 0, n);
+            out.write(staging, 0, n);
+        }
+    }
+
+    private static final class Acquisition {
+        private final long time = System.currentTimeMillis();
+        private final Throwable site = new Throwable("Buffer acquired here");
+        private final boolean longLived;
+
+        private Acquisition(boolean longLived) {
+            this.longLived = longLived;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.cse471.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChunkCache {
+    private final long capacityBytes;
+    private final ChunkBufferPool pool; // Cache slots are pool buffers, returned on eviction
+    // Access-ordered map: iteration order is least-recently-used first (LRU)
+    private final LinkedHashMap<ChunkKey, ByteBuffer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes = 0;
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    // Yapıcı Metot: Önbelleğin bayt cinsinden üst sınırını ve parçaların
+    // saklanacağı tamponları veren havuzu belirler.
+    public ChunkCache(long capacityBytes, ChunkBufferPool pool) {
+        this.capacityBytes = capacityBytes;
+        this.pool = pool;
+    }
+
+    // Önbellekten Oku: Parça bellekteyse içeriğini verilen tampona kopyalar ve
+    // true döner, yoksa false.
+    public boolean get(String fileHash, int chunkIndex, ByteBuffer dst) {
+        synchronized (this) {
+            ByteBuffer buffer = entries.get(new ChunkKey(fileHash, chunkIndex));
+            if (buffer != null) {
+                dst.put(buffer.duplicate());
+                hits.incrementAndGet();
+                bytesServed.addAndGet(buffer.remaining()); // The chunk, not the slot
+                return true;
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    // Önbellekte Var mı: İstatistikleri etkilemeden parçanın bellekte olup
+    // olmadığını kontrol eder (read-ahead için).
+    public synchronized boolean contains(String fileHash, int chunkIndex) {
+        return entries.containsKey(new ChunkKey(fileHash, chunkIndex));
+    }
+
+    // Önbelleğe Ekle: Tamponun kalan içeriğini havuzdan alınan bir direct
+    // tampona kopyalar, gerekirse en az kullanılanları atar (LRU) ve tamponlarını
+    // havuza iade eder; dolu önbellekte ekleme yeni bellek ayırmaz. Kaynak
+    // tamponun konumu değişmez. Parça önbelleğe girdiyse true döner. Saklanan
+    // tampon atılınca yeniden kullanıldığı için dışarı verilmez, okumalar get()
+    // ile kopyalanır.
+    public boolean put(String fileHash, int chunkIndex, ByteBuffer data) {
+        int length = data.remaining();
+        if (length <= 0 || length > pool.getBufferSize() || pool.getBufferSize() > capacityBytes)
+            return false;
+
+        // Copy outside the lock
+        ByteBuffer buffer = pool.acquireLongLived(); // Held until evicted
+        buffer.put(data.duplicate());
+        buffer.flip();
+
+        List<ByteBuffer> released = new ArrayList<>();
+        synchronized (this) {
+            ByteBuffer previous = entries.put(new ChunkKey(fileHash, chunkIndex), buffer);
+            if (previous != null) {
+                usedBytes -= previous.capacity();
+                released.add(previous);
+            }
+            usedBytes += buffer.capacity(); // The whole slot is held, not just the chunk
+
+            Iterator<Map.Entry<ChunkKey, ByteBuffer>> it = entries.entrySet().iterator();
+            while (usedBytes > capacityBytes && it.hasNext()) {
+                Map.Entry<ChunkKey, ByteBuffer> eldest = it.next();
+                usedBytes -= eldest.getValue().capacity();
+                released.add(eldest.getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        for (ByteBuffer slot : released)
+            pool.release(slot);
+        return true;
+    }
+
+    // Dosyayı Geçersiz Kıl: Bir dosyaya ait tüm parçaları önbellekten siler.
+    public void invalidate(String fileHash) {
+        List<ByteBuffer> released = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<ChunkKey, ByteBuffer>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ChunkKey, ByteBuffer> entry = it.next();
+                if (entry.getKey().fileHash.equals(fileHash)) {
+                    usedBytes -= entry.getValue().capacity();
+                    released.add(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+        for (ByteBuffer slot : released)
+            pool.release(slot);
+    }
+
+    public void clear() {
+        List<ByteBuffer> released;
+        synchronized (this) {
+            released = new ArrayList<>(entries.values());
+            entries.clear();
+            usedBytes = 0;
+        }
+        for (ByteBuffer slot : released)
+            pool.release(slot);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    // İsabet Oranı: Toplam isteklerin ne kadarının önbellekten karşılandığını
+    // (0.0 - 1.0) döner.
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChunkCache[hitRate=%.2f, hits=%d, misses=%d, evictions=%d, served=%d KB, used=%d/%d KB]",
+                getHitRate(), getHits(), getMisses(), getEvictions(), getBytesServed() / 1024,
+                getUsedBytes() / 1024, capacityBytes / 1024);
+    }
+
+    // Key: (File Hash, Chunk Index)
+    static final class ChunkKey {
+        final String fileHash;
+        final int chunkIndex;
+
+        ChunkKey(String fileHash, int chunkIndex) {
+            this.fileHash = fileHash;
+            this.chunkIndex = chunkIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof ChunkKey))
+                return false;
+            ChunkKey other = (ChunkKey) o;
+            return chunkIndex == other.chunkIndex && fileHash.equals(other.fileHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileHash, chunkIndex);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.cse471.file;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Content-addressed chunk index (-Dp2p.chunkStore=true). Every shared file is
+// also described by a manifest, the SHA-256 ids of its 256 KB chunks, and
+// every chunk id points at one local file that contains it. Re-encodes and
+// trimmed copies that share chunks then share cache entries and can serve each
+// other's chunks.
+public class ChunkStore {
+    public static final boolean ENABLED = Boolean.getBoolean("p2p.chunkStore");
+
+    private final Map<ContentId, ContentId[]> manifests = new ConcurrentHashMap<>(); // File ID -> Chunk IDs
+    private final Map<ContentId, Location> locations = new ConcurrentHashMap<>(); // Chunk ID -> First local copy
+    private volatile long totalChunks = 0;
+
+    public static final class Location {
+        private final String fileHash;
+        private final int chunkIndex;
+
+        Location(String fileHash, int chunkIndex) {
+            this.fileHash = fileHash;
+            this.chunkIndex = chunkIndex;
+        }
+
+        public String getFileHash() {
+            return fileHash;
+        }
+
+        public int getChunkIndex() {
+            return chunkIndex;
+        }
+    }
+
+    // Manifest Ekle: Dosyanın parça kimliklerini kaydeder; daha önce başka bir
+    // dosyada görülmemiş parçalar için bu dosyayı konum olarak işaretler.
+    synchronized void addManifest(ContentId fileId, ContentId[] chunkIds) {
+        if (manifests.put(fileId, chunkIds) != null)
+            return; // Same content under another name, already indexed
+        String fileHash = fileId.toHex();
+        for (int i = 0; i < chunkIds.length; i++)
+            locations.putIfAbsent(chunkIds[i], new Location(fileHash, i));
+        totalChunks += chunkIds.length;
+    }
+
+    public ContentId[] getManifest(String fileHash) {
+        ContentId fileId = ContentId.fromHex(fileHash);
+        return fileId != null ? manifests.get(fileId) : null;
+    }
+
+    // Parça Kimliği: Dosyanın manifest'i varsa verilen parçanın kimliğini, yoksa
+    // null döner.
+    public ContentId getChunkId(String fileHash, int chunkIndex) {
+        ContentId[] manifest = getManifest(fileHash);
+        return manifest != null && chunkIndex >= 0 && chunkIndex < manifest.length ? manifest[chunkIndex] : null;
+    }
+
+    // Parça Özeti: Tamponun kalan içeriğinin kimliğini hesaplar (konumu
+    // değiştirmez). Ağdan gelen parçayı manifest'e karşı doğrulamak için.
+    public static ContentId idOf(ByteBuffer data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data.duplicate());
+            return ContentId.fromBytes(md.digest(), 0);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM ships SHA-256
+        }
+    }
+
+    public Location find(ContentId chunkId) {
+        return locations.get(chunkId);
+    }
+
+    synchronized void clear() {
+        manifests.clear();
+        locations.clear();
+        totalChunks = 0;
+    }
+
+    public int getUniqueChunks() {
+        return locations.size();
+    }
+
+    public long getTotalChunks() {
+        return totalChunks;
+    }
+}
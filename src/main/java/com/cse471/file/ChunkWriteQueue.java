@@ -0,0 +1,133 @@
+package com.cse471.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class ChunkWriteQueue {
+    private static final int WRITER_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 64; // 64 x 256 KB = 16 MB of pending writes at most
+
+    private final FileManager fileManager;
+    // Bounded queue: when disk falls behind, the caller writes synchronously
+    // (back-pressure) instead of buffering without limit
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 0,
+            TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                Thread t = new Thread(r, "Chunk-Writer");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    // File Name -> writes in progress. A counter is only added, incremented and
+    // removed inside the map's per-key compute, so a flush can never drop a
+    // counter that a concurrent submit is about to use
+    private final ConcurrentHashMap<String, PendingWrites> pending = new ConcurrentHashMap<>();
+
+    // Yapıcı Metot: Yazma işlemlerini yapacak dosya yöneticisini bağlar.
+    public ChunkWriteQueue(FileManager fileManager) {
+        this.fileManager = fileManager;
+    }
+
+    // Kuyruğa Ekle: Parçayı arka planda diske yazılmak üzere sıraya koyar, ağ
+    // thread'i diski beklemez. Yazma bitince tampon havuza iade edilir; yazma
+    // başarısız olursa parça, dosyanın sahibi alana kadar kayıtlı kalır.
+    public void submit(String fileName, int chunkIndex, ByteBuffer data) {
+        PendingWrites counter = pending.compute(fileName, (k, existing) -> {
+            PendingWrites c = existing != null ? existing : new PendingWrites();
+            c.increment();
+            return c;
+        });
+        executor.execute(() -> {
+            boolean written = false;
+            try {
+                fileManager.writeChunk(fileName, chunkIndex, data);
+                written = true;
+            } catch (IOException e) {
+                System.err.println("Write-behind: chunk " + chunkIndex + " of " + fileName + " failed: "
+                        + e.getMessage());
+            } finally {
+                fileManager.getBufferPool().release(data);
+                counter.finish(chunkIndex, written);
+            }
+        });
+    }
+
+    // Yazmaları Bekle: Dosyaya ait bekleyen tüm yazmalar bitene (yazılana veya
+    // başarısız olana) kadar bekler. Hataları tüketmez: oynatıcı da beklese
+    // hatalar indirmenin takeFailures çağrısına kalır.
+    public void awaitWrites(String fileName) throws IOException {
+        PendingWrites counter = pending.get(fileName);
+        if (counter == null)
+            return;
+        try {
+            counter.awaitZero();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing " + fileName, e);
+        }
+        removeIfIdle(fileName);
+    }
+
+    // Parça Yazılamadı mı: Parçanın son yazması başarısız olduysa ve henüz
+    // indirmeye geri verilmediyse true.
+    public boolean hasFailed(String fileName, int chunkIndex) {
+        PendingWrites counter = pending.get(fileName);
+        return counter != null && counter.hasFailed(chunkIndex);
+    }
+
+    // Hataları Al: Diske yazılamayan parçaların numaralarını döner ve kayıttan
+    // siler. Dosyayı indiren görev çağırır; her parça bir kez döner.
+    public BitSet takeFailures(String fileName) {
+        PendingWrites counter = pending.get(fileName);
+        if (counter == null)
+            return new BitSet();
+        BitSet failed = counter.takeFailures();
+        removeIfIdle(fileName);
+        return failed;
+    }
+
+    // The map's compute runs under the same per-key lock as submit, so a counter
+    // that a concurrent submit is using is never dropped
+    private void removeIfIdle(String fileName) {
+        pending.computeIfPresent(fileName, (k, c) -> c.isIdle() ? null : c);
+    }
+
+    private static final class PendingWrites {
+        private int count = 0;
+        private final BitSet failed = new BitSet(); // Chunks whose last write failed, not yet taken
+
+        synchronized void increment() {
+            count++;
+        }
+
+        // A later successful write of the same chunk (a re-download) clears its failure
+        synchronized void finish(int chunkIndex, boolean written) {
+            failed.set(chunkIndex, !written);
+            count--;
+            if (count == 0)
+                notifyAll();
+        }
+
+        synchronized boolean hasFailed(int chunkIndex) {
+            return failed.get(chunkIndex);
+        }
+
+        synchronized BitSet takeFailures() {
+            BitSet taken = (BitSet) failed.clone();
+            failed.clear();
+            return taken;
+        }
+
+        synchronized boolean isIdle() {
+            return count == 0 && failed.isEmpty();
+        }
+
+        synchronized void awaitZero() throws InterruptedException {
+            while (count > 0)
+                wait();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.cse471.file;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Local library index keyed by content id. Ids live inline in one long[] (four
+// words per slot, open addressing with linear probing) next to a parallel
+// array of entries, so a file costs its 32-byte id plus one (size, path) entry
+// instead of a hex String key per map. A scan fills a Builder and publishes it
+// as an immutable table through a volatile field, so lookups on the serving
+// path never take a lock.
+final class ContentCatalog {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final float MAX_LOAD = 0.7f;
+
+    private volatile Table table = new Builder().build();
+
+    static final class Entry {
+        final long size;
+        private final String path; // Absolute; the display name is its last segment
+
+        Entry(long size, String path) {
+            this.size = size;
+            this.path = path;
+        }
+
+        Path path() {
+            return Paths.get(path);
+        }
+
+        String name() {
+            return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+        }
+    }
+
+    // Yayınla: Taramada doldurulan tabloyu tek adımda geçerli katalog yapar;
+    // o ana kadar okuyanlar eski tabloyu görmeye devam eder.
+    void publish(Builder builder) {
+        table = builder.build();
+    }
+
+    Entry get(ContentId id) {
+        Table current = table;
+        return current.entries[findSlot(current.keys, current.entries, id)];
+    }
+
+    int size() {
+        return table.count;
+    }
+
+    // Dosya Listesi: Katalogdaki dosyaları FileInfo olarak üretir (hex hash'ler
+    // ve dosya adları yalnızca burada oluşturulur).
+    List<FileInfo> toFileInfos() {
+        Table current = table;
+        List<FileInfo> files = new ArrayList<>(current.count);
+        for (int slot = 0; slot < current.entries.length; slot++) {
+            Entry entry = current.entries[slot];
+            if (entry != null)
+                files.add(new FileInfo(entry.name(), entry.size, idAt(current.keys, slot).toHex()));
+        }
+        return files;
+    }
+
+    List<String> hexIds() {
+        Table current = table;
+        List<String> ids = new ArrayList<>(current.count);
+        for (int slot = 0; slot < current.entries.length; slot++) {
+            if (current.entries[slot] != null)
+                ids.add(idAt(current.keys, slot).toHex());
+        }
+        return ids;
+    }
+
+    private static ContentId idAt(long[] keys, int slot) {
+        return new ContentId(keys[slot * 4], keys[slot * 4 + 1], keys[slot * 4 + 2], keys[slot * 4 + 3]);
+    }
+
+    // Yuva Bul: İçeriğin bulunduğu veya ekleneceği ilk boş yuvayı döner.
+    private static int findSlot(long[] keys, Entry[] entries, ContentId id) {
+        int mask = entries.length - 1;
+        int slot = id.hashCode() & mask;
+        long w0 = id.word(0), w1 = id.word(1), w2 = id.word(2), w3 = id.word(3);
+        while (entries[slot] != null) {
+            int base = slot * 4;
+            if (keys[base] == w0 && keys[base + 1] == w1 && keys[base + 2] == w2 && keys[base + 3] == w3)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final Entry[] entries; // null = empty slot
+        private final int count;
+
+        Table(long[] keys, Entry[] entries, int count) {
+            this.keys = keys;
+            this.entries = entries;
+            this.count = count;
+        }
+    }
+
+    // Tek bir taramanın kullandığı, yayınlanana kadar yalnızca o taramanın
+    // thread'inin gördüğü tablo.
+    static final class Builder {
+        private long[] keys = new long[INITIAL_SLOTS * 4];
+        private Entry[] entries = new Entry[INITIAL_SLOTS];
+        private int count = 0;
+
+        // Ekle: Aynı içerik zaten varsa kaydı yenisiyle değiştirir.
+        void put(ContentId id, long size, Path path) {
+            if (count + 1 > entries.length * MAX_LOAD)
+                resize(entries.length * 2);
+            int slot = findSlot(keys, entries, id);
+            if (entries[slot] == null) {
+                count++;
+                for (int w = 0; w < 4; w++)
+                    keys[slot * 4 + w] = id.word(w);
+            }
+            entries[slot] = new Entry(size, path.toAbsolutePath().toString());
+        }
+
+        private Table build() {
+            return new Table(keys, entries, count);
+        }
+
+        private void resize(int slots) {
+            long[] newKeys = new long[slots * 4];
+            Entry[] newEntries = new Entry[slots];
+            for (int slot = 0; slot < entries.length; slot++) {
+                if (entries[slot] == null)
+                    continue;
+                int target = findSlot(newKeys, newEntries, idAt(keys, slot));
+                System.arraycopy(keys, slot * 4, newKeys, target * 4, 4);
+                newEntries[target] = entries[slot];
+            }
+            keys = newKeys;
+            entries = newEntries;
+        }
+    }
+}
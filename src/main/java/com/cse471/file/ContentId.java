@@ -0,0 +1,113 @@
+package com.cse471.file;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+// Immutable SHA-256 content id held as four longs: 32 bytes of payload instead
+// of a 64-char hex String, with equals/hashCode that never touch characters.
+public final class ContentId implements Serializable {
+    public static final int BYTES = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long w0, w1, w2, w3;
+
+    ContentId(long w0, long w1, long w2, long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    // Baytlardan: 32 baytlık ham özetten (ör. MessageDigest çıktısı) kimlik
+    // oluşturur.
+    public static ContentId fromBytes(byte[] bytes, int offset) {
+        if (bytes.length - offset < BYTES)
+            throw new IllegalArgumentException("Content id needs " + BYTES + " bytes");
+        return new ContentId(readLong(bytes, offset), readLong(bytes, offset + 8), readLong(bytes, offset + 16),
+                readLong(bytes, offset + 24));
+    }
+
+    // Hex'ten: 64 karakterlik hex metni çözer; geçerli bir SHA-256 hex'i değilse
+    // null döner (ağdan gelen hash'ler için).
+    public static ContentId fromHex(CharSequence hex) {
+        if (hex == null || hex.length() != BYTES * 2)
+            return null;
+        long[] words = new long[4];
+        for (int i = 0; i < BYTES * 2; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0)
+                return null;
+            words[i >> 4] = (words[i >> 4] << 4) | digit;
+        }
+        return new ContentId(words[0], words[1], words[2], words[3]);
+    }
+
+    public static ContentId read(DataInput in) throws IOException {
+        return new ContentId(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(w0);
+        out.writeLong(w1);
+        out.writeLong(w2);
+        out.writeLong(w3);
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[BYTES];
+        for (int i = 0; i < BYTES; i++)
+            bytes[i] = (byte) (word(i >> 3) >>> (56 - (i & 7) * 8));
+        return bytes;
+    }
+
+    // Hex'e Çevir: Tablo ile karakter karakter yazar (bayt başına
+    // String.format yerine).
+    public String toHex() {
+        char[] out = new char[BYTES * 2];
+        for (int i = 0; i < out.length; i++)
+            out[i] = HEX[(int) (word(i >> 4) >>> (60 - (i & 15) * 4)) & 0xF];
+        return new String(out);
+    }
+
+    long word(int index) {
+        switch (index) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            default:
+                return w3;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ContentId))
+            return false;
+        ContentId other = (ContentId) o;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) w0; // SHA-256 output is already uniformly distributed
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,213 @@
+package com.cse471.file;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+public class DownloadSession {
+    private static final int MAX_ATTEMPTS = 3; // Per chunk, before it is given up
+    private static final int SEEK_WINDOW = 4; // Chunks fetched first after a seek
+    private static final int PLAYBACK_WINDOW = 16; // Chunks ahead of the player that are worth keeping in memory
+
+    private final FileInfo fileInfo;
+    private final int chunkSize;
+    private final int totalChunks;
+    private final BitSet received;
+    private final BitSet abandoned;
+    private final int[] attempts;
+    // Chunks someone is waiting for (e.g. the player), fetched before the
+    // sequential cursor
+    private final LinkedHashSet<Integer> priority = new LinkedHashSet<>();
+    // Chunks needed wherever the player is (e.g. the MP4 index), kept across seeks
+    private final LinkedHashSet<Integer> pinned = new LinkedHashSet<>();
+    private int cursor = 0;
+    private volatile int playbackChunk = 0; // Chunk the player reads now
+    private boolean closed = false;
+
+    // Yapıcı Metot: İndirilecek dosyanın parça sayısına göre durum tablosunu
+    // oluşturur.
+    public DownloadSession(FileInfo fileInfo, int chunkSize) {
+        this.fileInfo = fileInfo;
+        this.chunkSize = chunkSize;
+        this.totalChunks = fileInfo.getTotalChunks(chunkSize);
+        this.received = new BitSet(totalChunks);
+        this.abandoned = new BitSet(totalChunks);
+        this.attempts = new int[totalChunks];
+    }
+
+    public FileInfo getFileInfo() {
+        return fileInfo;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    // Sıradaki Parça: Önce sabitlenmiş, sonra öncelikli istenen parçaları, yoksa
+    // imleçten itibaren eksik olan ilk parçayı döner. İndirilecek parça
+    // kalmadıysa -1.
+    public synchronized int nextChunk() {
+        if (closed)
+            return -1;
+
+        int next = takeFirstPending(pinned);
+        if (next < 0)
+            next = takeFirstPending(priority);
+        if (next >= 0)
+            return next;
+
+        for (int n = 0; n < totalChunks; n++) {
+            int index = (cursor + n) % totalChunks;
+            if (isPending(index)) {
+                cursor = index + 1;
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int takeFirstPending(LinkedHashSet<Integer> queue) {
+        Iterator<Integer> it = queue.iterator();
+        while (it.hasNext()) {
+            int index = it.next();
+            it.remove();
+            if (isPending(index))
+                return index;
+        }
+        return -1;
+    }
+
+    private boolean isPending(int index) {
+        return !received.get(index) && !abandoned.get(index);
+    }
+
+    // Parça Geldi: Parçayı alındı olarak işaretler ve bu parçayı bekleyenleri
+    // uyandırır.
+    public synchronized void markReceived(int index) {
+        received.set(index);
+        notifyAll();
+    }
+
+    // Parça Başarısız: Deneme sayısını artırır; sınır aşılırsa parçadan vazgeçilir
+    // ve bekleyenler uyandırılır.
+    public synchronized void markFailed(int index) {
+        attempts[index]++;
+        if (attempts[index] >= MAX_ATTEMPTS) {
+            abandoned.set(index);
+            notifyAll();
+        }
+    }
+
+    // Parça Kayboldu: Alındı sayılan ama diske yazılamayan parçayı yeniden
+    // indirilecekler arasına geri koyar. Başarısız deneme sayılır; disk hep
+    // hata veriyorsa parçadan vazgeçilir.
+    public synchronized void markLost(int index) {
+        received.clear(index);
+        markFailed(index);
+        requestPriority(index);
+    }
+
+    // Öncelik İste: Parçayı sıradaki ilk indirilecekler arasına alır.
+    public synchronized void requestPriority(int index) {
+        if (index >= 0 && index < totalChunks && isPending(index))
+            priority.add(index);
+    }
+
+    // Aralığı Sabitle: Bayt aralığını kapsayan parçaları (en fazla maxChunks
+    // tane) her şeyden önce indirilecekler listesine ekler. Bu liste oynatıcı
+    // atlasa da korunur (ör. MP4 indeksi her konumda gerekir).
+    public synchronized void prioritizeRange(long fromByte, long toByte, int maxChunks) {
+        int first = (int) Math.max(0, fromByte / chunkSize);
+        int last = (int) Math.min(totalChunks - 1, (toByte - 1) / chunkSize);
+        for (int index = first; index <= last && index < first + maxChunks; index++) {
+            if (isPending(index))
+                pinned.add(index);
+        }
+    }
+
+    // Konuma Atla (Seek): Oynatıcı yeni bir konuma atladığında, yeni konumun
+    // gerisinde kalan öncelikli istekleri iptal eder ve yeni konumun etrafındaki
+    // parçaları en öne alır. İlerideki istekler (ör. kaynak meşgul olduğu için
+    // geri konanlar) ve sabitlenmiş parçalar korunur. Sıralı indirme de yeni
+    // konumdan devam eder.
+    public synchronized void seekTo(long byteOffset) {
+        if (totalChunks == 0)
+            return;
+        int index = (int) Math.max(0, Math.min(totalChunks - 1, byteOffset / chunkSize));
+        LinkedHashSet<Integer> ahead = new LinkedHashSet<>();
+        for (int queued : priority) {
+            if (queued >= index)
+                ahead.add(queued);
+        }
+        priority.clear();
+        for (int n = 0; n < SEEK_WINDOW && index + n < totalChunks; n++) {
+            requestPriority(index + n);
+        }
+        priority.addAll(ahead); // After the seek window
+        cursor = index;
+    }
+
+    // Oynatma Konumu: Oynatıcının okuduğu parçayı kaydeder.
+    public void setPlaybackChunk(int index) {
+        playbackChunk = index;
+    }
+
+    // Oynatmaya Yakın mı: Parça, oynatıcının okuduğu parça ile önündeki
+    // PLAYBACK_WINDOW parça arasındaysa true (yakında okunacak).
+    public boolean isNearPlayback(int index) {
+        int current = playbackChunk;
+        return index >= current && index < current + PLAYBACK_WINDOW;
+    }
+
+    // Parçayı Bekle: Parça gelene kadar bekler (oynatıcı için). Beklerken parçayı
+    // öncelikli indirilecekler listesine ekler. Parça geldiyse true döner.
+    public synchronized boolean awaitChunk(int index, long timeoutMs) throws InterruptedException {
+        if (index < 0 || index >= totalChunks)
+            return false;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!received.get(index)) {
+            if (closed || abandoned.get(index))
+                return false;
+            requestPriority(index);
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized boolean hasChunk(int index) {
+        return received.get(index);
+    }
+
+    // Kesintisiz Parça Sayısı: Baştan itibaren arada boşluk olmadan alınmış
+    // parça sayısı (oynatma tamponu için).
+    public synchronized int getContiguousChunks() {
+        int firstMissing = received.nextClearBit(0);
+        return Math.min(firstMissing, totalChunks);
+    }
+
+    public synchronized int getReceivedCount() {
+        return received.cardinality();
+    }
+
+    public synchronized boolean isComplete() {
+        return received.cardinality() == totalChunks;
+    }
+
+    // Oturumu Kapat: İndirme bittiğinde ya da iptal edildiğinde bekleyenleri
+    // serbest bırakır.
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
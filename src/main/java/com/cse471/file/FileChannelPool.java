@@ -0,0 +1,164 @@
+package com.cse471.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class FileChannelPool {
+    private static final long IDLE_TIMEOUT_MS = 30_000;
+
+    private final int maxOpenChannels;
+    // Access-ordered: least recently used channels are evicted first
+    private final LinkedHashMap<String, PooledChannel> channels = new LinkedHashMap<>(16, 0.75f, true);
+    private final ScheduledExecutorService idleReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "FileChannel-Reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Yapıcı Metot: Aynı anda açık tutulacak en fazla kanal sayısını belirler ve
+    // boşta kalan kanalları kapatan zamanlayıcıyı başlatır.
+    public FileChannelPool(int maxOpenChannels) {
+        this.maxOpenChannels = maxOpenChannels;
+        idleReaper.scheduleWithFixedDelay(this::closeIdleChannels, IDLE_TIMEOUT_MS, IDLE_TIMEOUT_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Kanal Al: Dosyanın açık kanalını havuzdan verir, yoksa açar. Kullanım
+    // bitince Handle.close() ile iade edilmelidir.
+    public synchronized Handle acquire(Path path, boolean writable) throws IOException {
+        String key = path.toAbsolutePath() + (writable ? "#rw" : "#r");
+        PooledChannel pooled = channels.get(key);
+        if (pooled == null || !pooled.channel.isOpen()) {
+            FileChannel channel = writable
+                    ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE)
+                    : FileChannel.open(path, StandardOpenOption.READ);
+            pooled = new PooledChannel(channel);
+            channels.put(key, pooled);
+            evictOverflow();
+        }
+        pooled.refCount++;
+        return new Handle(this, pooled);
+    }
+
+    // Kanal İade: Referans sayısını düşürür. Kanal kapatılmaz, tekrar kullanılmak
+    // üzere havuzda kalır.
+    private synchronized void release(PooledChannel pooled) {
+        pooled.refCount--;
+        pooled.lastUsed = System.currentTimeMillis();
+    }
+
+    // Taşmayı Temizle: Havuz sınırı aşıldıysa kullanılmayan en eski kanalları
+    // kapatır. Kullanımdaki kanallara dokunulmaz.
+    private void evictOverflow() {
+        Iterator<PooledChannel> it = channels.values().iterator();
+        while (channels.size() > maxOpenChannels && it.hasNext()) {
+            PooledChannel candidate = it.next();
+            if (candidate.refCount == 0) {
+                closeQuietly(candidate.channel);
+                it.remove();
+            }
+        }
+    }
+
+    // Boşta Olanları Kapat: Belirli bir süredir kullanılmayan kanalları kapatır.
+    private synchronized void closeIdleChannels() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledChannel> it = channels.values().iterator();
+        while (it.hasNext()) {
+            PooledChannel candidate = it.next();
+            if (candidate.refCount == 0 && now - candidate.lastUsed > IDLE_TIMEOUT_MS) {
+                closeQuietly(candidate.channel);
+                it.remove();
+            }
+        }
+    }
+
+    // Tümünü Kapat: Kullanılmayan tüm kanalları kapatır (ör. klasör değişince).
+    public synchronized void closeAll() {
+        Iterator<Map.Entry<String, PooledChannel>> it = channels.entrySet().iterator();
+        while (it.hasNext()) {
+            PooledChannel candidate = it.next().getValue();
+            if (candidate.refCount == 0) {
+                closeQuietly(candidate.channel);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int getOpenChannelCount() {
+        return channels.size();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class PooledChannel {
+        private final FileChannel channel;
+        private int refCount = 0;
+        private long lastUsed = System.currentTimeMillis();
+
+        PooledChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // Handle: Havuzdan alınan kanalın kullanım süresini temsil eder
+    // (try-with-resources ile kullanılır).
+    public static final class Handle implements AutoCloseable {
+        private final FileChannelPool pool;
+        private final PooledChannel pooled;
+        private boolean released = false;
+
+        private Handle(FileChannelPool pool, PooledChannel pooled) {
+            this.pool = pool;
+            this.pooled = pooled;
+        }
+
+        public FileChannel channel() {
+            return pooled.channel;
+        }
+
+        // Konumsal Okuma: seek yapmadan verilen konumdan tampon dolana ya da dosya
+        // bitene kadar okur. Aynı dosyayı okuyan thread'ler birbirini beklemez.
+        public int readFully(ByteBuffer dst, long position) throws IOException {
+            int total = 0;
+            while (dst.hasRemaining()) {
+                int read = pooled.channel.read(dst, position + total);
+                if (read < 0)
+                    break;
+                total += read;
+            }
+            return total;
+        }
+
+        // Konumsal Yazma: Tamponun tamamını verilen konuma yazar.
+        public void writeFully(ByteBuffer src, long position) throws IOException {
+            long offset = position;
+            while (src.hasRemaining()) {
+                offset += pooled.channel.write(src, offset);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                pool.release(pooled);
+            }
+        }
+    }
+}
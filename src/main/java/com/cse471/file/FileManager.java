@@ -1,21 +1,74 @@
 package com.cse471.file;
 
+import com.cse471.metrics.MetricsRegistry;
+
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 public class FileManager {
     private static final int CHUNK_SIZE = 256 * 1024; // 256 KB
+    private static final long CACHE_SIZE = Long.getLong("p2p.chunkCacheMb", 64) * 1024 * 1024;
+    private static final int READ_AHEAD_CHUNKS = 4; // Chunks prefetched for a sequential reader
+    private static final int MAX_TRACKED_READERS = 1024;
+    private static final int MAX_OPEN_CHANNELS = 64;
+    private static final boolean WRITE_BEHIND = Boolean.getBoolean("p2p.writeBehind");
+    private static final int MAX_POOLED_BUFFERS = 64; // 64 x 256 KB = 16 MB of reusable direct memory
     private File rootFolder;
-    private File bufferFolder;
-    private final ConcurrentHashMap<String, FileInfo> localFiles = new ConcurrentHashMap<>(); // Key: Hash
-    private final ConcurrentHashMap<String, Path> localFilePaths = new ConcurrentHashMap<>(); // Key: Hash -> Absolute
-                                                                                              // Path
+    private volatile File bufferFolder;
+    private final ContentCatalog catalog = new ContentCatalog(); // Content ID -> Size, Absolute Path
+    private final AtomicInteger catalogVersion = new AtomicInteger(); // Bumped after every scan
+    private final ChunkStore chunkStore = new ChunkStore(); // Chunk manifests, only filled with -Dp2p.chunkStore
+    // Single-flight: (File Hash, Chunk Index) -> disk read in progress, joined by
+    // concurrent requests for the same chunk instead of reading it again
+    private final ConcurrentHashMap<ChunkCache.ChunkKey, CompletableFuture<Boolean>> inFlightReads = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedReads = new AtomicLong();
+    private final MetricsRegistry.Histogram diskReadMs = MetricsRegistry.getInstance().histogram("p2p_disk_read_ms",
+            "Latency of one chunk read from disk");
+    private final MetricsRegistry.Histogram diskWriteMs = MetricsRegistry.getInstance().histogram("p2p_disk_write_ms",
+            "Latency of one chunk write to disk");
+    private final FileChannelPool channelPool = new FileChannelPool(MAX_OPEN_CHANNELS);
+    private final ChunkWriteQueue writeQueue = new ChunkWriteQueue(this);
+    private final ChunkBufferPool bufferPool = new ChunkBufferPool(CHUNK_SIZE, MAX_POOLED_BUFFERS);
+    private final ChunkCache chunkCache = new ChunkCache(CACHE_SIZE, bufferPool);
+    // Key: Requester + File Hash -> Last served chunk index (for sequential access
+    // detection)
+    private final Map<String, Integer> lastChunkByReader = Collections
+            .synchronizedMap(new LinkedHashMap<String, Integer>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_TRACKED_READERS;
+                }
+            });
+    private final ExecutorService readAheadExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "Chunk-ReadAhead");
+        t.setDaemon(true);
+        return t;
+    });
 
     public FileManager() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.counterFunction("p2p_cache_hits_total", "Chunk reads served from memory", chunkCache::getHits);
+        metrics.counterFunction("p2p_cache_misses_total", "Chunk reads that went to disk", chunkCache::getMisses);
+        metrics.counterFunction("p2p_cache_evictions_total", "Chunks evicted from the cache",
+                chunkCache::getEvictions);
+        metrics.gauge("p2p_cache_hit_ratio", "Share of chunk reads served from memory (0-1)", chunkCache::getHitRate);
+        metrics.gauge("p2p_cache_used_bytes", "Bytes held by the chunk cache", chunkCache::getUsedBytes);
+        metrics.counterFunction("p2p_coalesced_reads_total", "Disk reads joined by a concurrent request",
+                coalescedReads::get);
+        metrics.counterFunction("p2p_buffer_allocations_total", "Chunk buffers allocated by the pool",
+                bufferPool::getAllocations);
+        metrics.gauge("p2p_buffer_pooled", "Idle chunk buffers in the pool", bufferPool::getPooledCount);
     }
 
     // Kök Klasör Ayarla: Paylaşıma açılacak ana klasörü belirler ve içindekileri
@@ -47,8 +100,10 @@ public class FileManager {
     public void scanRootFolder() {
         if (rootFolder == null || !rootFolder.exists())
             return;
-        localFiles.clear();
-        localFilePaths.clear();
+        ContentCatalog.Builder library = new ContentCatalog.Builder();
+        chunkStore.clear();
+        chunkCache.clear();
+        channelPool.closeAll();
 
         try (Stream<Path> paths = Files.walk(rootFolder.toPath())) {
             paths.filter(Files::isRegularFile)
@@ -58,11 +113,13 @@ public class FileManager {
                             if (name.startsWith("."))
                                 return;
 
-                            String hash = computeSha256(path);
-                            FileInfo info = new FileInfo(name, Files.size(path), hash);
-                            localFiles.put(hash, info); // Key by Hash
-                            localFilePaths.put(hash, path.toAbsolutePath()); // Store full path
-                            System.out.println("Indexed: " + name + " [" + hash.substring(0, 8) + "...] at " + path);
+                            List<ContentId> chunkIds = ChunkStore.ENABLED ? new ArrayList<>() : null;
+                            ContentId id = computeSha256(path, chunkIds);
+                            library.put(id, Files.size(path), path); // Store full path
+                            if (chunkIds != null)
+                                chunkStore.addManifest(id, chunkIds.toArray(new ContentId[0]));
+                            System.out.println("Indexed: " + name + " [" + id.toHex().substring(0, 8) + "...] at "
+                                    + path);
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
@@ -70,70 +127,341 @@ public class FileManager {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        catalog.publish(library);
+        if (ChunkStore.ENABLED)
+            System.out.println("Chunk store: " + chunkStore.getUniqueChunks() + " unique of "
+                    + chunkStore.getTotalChunks() + " chunks");
+        catalogVersion.incrementAndGet();
+    }
+
+    // Katalog Sürümü: Klasör her tarandığında artar; duyurularda katalog
+    // özetinin yeniden gönderilip gönderilmeyeceğine karar vermek için kullanılır.
+    public int getCatalogVersion() {
+        return catalogVersion.get();
     }
 
     // Yerel Dosya Listesi: Bu bilgisayarda paylaşıma açık olan dosyaların listesini
     // döner.
     public List<FileInfo> getLocalFileList() {
-        return new ArrayList<>(localFiles.values());
+        return catalog.toFileInfos();
+    }
+
+    // Yerel Hash'ler: Paylaşılan dosyaların hash listesi (anlık kopya).
+    public List<String> getLocalHashes() {
+        return catalog.hexIds();
     }
 
     // Hash ile Bul: Hash koduna göre dosya bilgisini getirir.
     public FileInfo getFileInfoByHash(String hash) {
-        return localFiles.get(hash);
+        ContentCatalog.Entry entry = lookup(hash);
+        return entry != null ? new FileInfo(entry.name(), entry.size, hash) : null;
     }
 
-    // Read a specific chunk from a file
-    // Parça Oku (Read Chunk): İstenen dosyanın belirli bir parçasını diskten okur.
-    public byte[] getChunk(String fileHash, int chunkIndex) throws IOException {
-        FileInfo info = localFiles.get(fileHash);
-        Path path = localFilePaths.get(fileHash);
+    private ContentCatalog.Entry lookup(String hash) {
+        ContentId id = ContentId.fromHex(hash);
+        return id != null ? catalog.get(id) : null;
+    }
 
-        if (info == null || path == null)
+    // Read a specific chunk from a file
+    // Parça Oku (Read Chunk): Parçayı önce önbellekte arar, yoksa diskten okuyup
+    // önbelleğe koyar. İsteyen taraf sıralı okuyorsa sonraki parçaları arka
+    // planda önceden okur. Dönen tampon havuzdandır, işi biten çağıran
+    // getBufferPool().release() ile iade etmelidir.
+    public ByteBuffer getChunk(String fileHash, int chunkIndex, String requester) throws IOException {
+        ContentCatalog.Entry entry = lookup(fileHash);
+        if (entry == null)
             throw new FileNotFoundException("File not found in catalog");
 
-        try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "r")) {
-            long offset = (long) chunkIndex * CHUNK_SIZE;
-            if (offset >= info.getFileSize())
-                return new byte[0];
+        if (requester != null)
+            trackSequentialAccess(requester, fileHash, entry, chunkIndex);
 
-            raf.seek(offset);
-            int bytesToRead = (int) Math.min(CHUNK_SIZE, info.getFileSize() - offset);
-            byte[] buffer = new byte[bytesToRead];
-            raf.readFully(buffer);
+        ChunkCache.ChunkKey key = cacheKey(fileHash, chunkIndex);
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            if (chunkCache.get(key.fileHash, key.chunkIndex, buffer)) {
+                buffer.flip();
+                return buffer;
+            }
+
+            readShared(key, entry, chunkIndex, buffer);
             return buffer;
+        } catch (IOException | RuntimeException e) {
+            bufferPool.release(buffer);
+            throw e;
         }
     }
 
-    // Parça Yaz (Write Chunk): Ağdan indirilen bir veri parçasını diske, doğru
-    // konumuna yazar.
-    public synchronized void writeChunk(String fileName, int chunkIndex, byte[] data) throws IOException {
+    // Parça Kimliği ile Oku: İçerik adresli depoda parçayı içeren herhangi bir
+    // yerel dosyadan okur (aynı parça farklı dosyalarda olabilir).
+    public ByteBuffer getChunkById(ContentId chunkId, String requester) throws IOException {
+        ChunkStore.Location location = chunkStore.find(chunkId);
+        if (location == null)
+            throw new FileNotFoundException("Chunk not found in store");
+        return getChunk(location.getFileHash(), location.getChunkIndex(), requester);
+    }
+
+    // Onarım Bloğu: firstChunk'tan başlayan k parçalık grubun parityIndex
+    // numaralı Reed-Solomon onarım bloğunu üretir. Grubun en uzun (ilk)
+    // parçası kadar uzundur; parçalar önbellek üzerinden okunur.
+    public byte[] getRepairBlock(String fileHash, int firstChunk, int k, int parityIndex) throws IOException {
+        if (k <= 0 || firstChunk < 0 || parityIndex < 0 || k + parityIndex >= ReedSolomon.MAX_SHARDS)
+            throw new IllegalArgumentException("Invalid repair request");
+        byte[] block = null;
+        for (int i = 0; i < k; i++) {
+            ByteBuffer data = getChunk(fileHash, firstChunk + i, null);
+            try {
+                if (block == null)
+                    block = new byte[data.remaining()];
+                ReedSolomon.addScaled(block, data, ReedSolomon.coefficient(k, parityIndex, i));
+            } finally {
+                bufferPool.release(data);
+            }
+        }
+        return block;
+    }
+
+    // Önbellek Anahtarı: Manifest'i olan dosyalarda parça kendi kimliğiyle
+    // önbelleğe girer, böylece farklı dosyalardaki aynı parça bir kez tutulur ve
+    // bir kez okunur.
+    private ChunkCache.ChunkKey cacheKey(String fileHash, int chunkIndex) {
+        ContentId chunkId = ChunkStore.ENABLED ? chunkStore.getChunkId(fileHash, chunkIndex) : null;
+        return chunkId != null ? new ChunkCache.ChunkKey(chunkId.toHex(), -1)
+                : new ChunkCache.ChunkKey(fileHash, chunkIndex);
+    }
+
+    public ChunkStore getChunkStore() {
+        return chunkStore;
+    }
+
+    // Ortak Okuma (Single-flight): Aynı parçayı aynı anda isteyenlerden ilki
+    // diskten okur ve önbelleğe koyar; diğerleri bu okumanın bitmesini bekleyip
+    // parçayı önbellekten kendi tamponlarına alır. Böylece yeni yayınlanan bir
+    // videoya gelen istek yığınında her parça diskten bir kez okunur. Parça bu
+    // arada önbellekten atıldıysa bekleyen kendisi okur. Tampon okuma için hazır
+    // bırakılır.
+    private void readShared(ChunkCache.ChunkKey key, ContentCatalog.Entry entry, int chunkIndex, ByteBuffer buffer)
+            throws IOException {
+        CompletableFuture<Boolean> flight = new CompletableFuture<>();
+        CompletableFuture<Boolean> leader = inFlightReads.putIfAbsent(key, flight);
+        if (leader != null) {
+            buffer.clear();
+            if (awaitRead(leader) && chunkCache.get(key.fileHash, key.chunkIndex, buffer)) {
+                coalescedReads.incrementAndGet();
+                buffer.flip();
+                return;
+            }
+            // Not cached (too large, empty or already evicted), read it ourselves
+            readChunkFromDisk(entry.size, entry.path(), chunkIndex, buffer);
+            return;
+        }
+
+        try {
+            readChunkFromDisk(entry.size, entry.path(), chunkIndex, buffer);
+            flight.complete(chunkCache.put(key.fileHash, key.chunkIndex, buffer));
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightReads.remove(key, flight);
+        }
+    }
+
+    private static boolean awaitRead(CompletableFuture<Boolean> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared read");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Shared read failed", cause);
+        }
+    }
+
+    // Birleştirilen Okumalar: Disk yerine devam eden bir okumadan karşılanan
+    // istek sayısı.
+    public long getCoalescedReads() {
+        return coalescedReads.get();
+    }
+
+    // Diskten Oku: Önbelleği atlayarak parçayı doğrudan dosyadan verilen tampona
+    // okur. Tampon okuma için hazır (flip edilmiş) bırakılır.
+    private void readChunkFromDisk(long fileSize, Path path, int chunkIndex, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        long offset = (long) chunkIndex * CHUNK_SIZE;
+        if (offset >= fileSize) {
+            buffer.flip();
+            return;
+        }
+
+        int bytesToRead = (int) Math.min(CHUNK_SIZE, fileSize - offset);
+        buffer.limit(bytesToRead);
+        long start = System.nanoTime();
+        try (FileChannelPool.Handle handle = channelPool.acquire(path, false)) {
+            if (handle.readFully(buffer, offset) < bytesToRead)
+                throw new EOFException("Unexpected end of file at chunk " + chunkIndex);
+        }
+        diskReadMs.observe((System.nanoTime() - start) / 1e6);
+        buffer.flip();
+    }
+
+    // İndirilen Parçayı Önbelleğe Al: Ağdan gelen parçayı, oynatıcı diske
+    // gitmeden okuyabilsin diye önbelleğe kopyalar.
+    public void cacheChunk(String fileHash, int chunkIndex, ByteBuffer data) {
+        chunkCache.put(fileHash, chunkIndex, data);
+    }
+
+    // İndirilen Parçayı Oku: Devam eden bir indirmenin parçasını önce
+    // önbellekten, yoksa buffer klasöründeki dosyadan okur. Tampon okuma için
+    // hazır bırakılır.
+    public void readDownloadedChunk(DownloadSession session, int chunkIndex, ByteBuffer dst) throws IOException {
+        FileInfo info = session.getFileInfo();
+        dst.clear();
+        if (chunkCache.get(info.getHash(), chunkIndex, dst)) {
+            dst.flip();
+            return;
+        }
+
+        File folder = bufferFolder;
+        if (folder == null)
+            throw new IOException("Buffer folder not set");
+        // Evicted from cache: make sure a queued write has reached the disk
+        flushWrites(info.getFileName());
+        if (writeQueue.hasFailed(info.getFileName(), chunkIndex))
+            throw new IOException("Chunk " + chunkIndex + " of " + info.getFileName() + " was not written to disk");
+        readChunkFromDisk(info.getFileSize(), new File(folder, info.getFileName()).toPath(), chunkIndex, dst);
+    }
+
+    // Sıralı Erişim Takibi: Aynı isteyen aynı dosyanın bir sonraki parçasını
+    // istiyorsa, ilerideki parçaları asenkron olarak önbelleğe yükler.
+    private void trackSequentialAccess(String requester, String fileHash, ContentCatalog.Entry entry, int chunkIndex) {
+        Integer previous = lastChunkByReader.put(requester + "/" + fileHash, chunkIndex);
+        if (previous == null || previous != chunkIndex - 1)
+            return;
+
+        int totalChunks = (int) ((entry.size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int i = chunkIndex + 1; i <= chunkIndex + READ_AHEAD_CHUNKS && i < totalChunks; i++) {
+            ChunkCache.ChunkKey key = cacheKey(fileHash, i);
+            if (chunkCache.contains(key.fileHash, key.chunkIndex))
+                continue;
+            final int ahead = i;
+            readAheadExecutor.submit(() -> {
+                try {
+                    if (chunkCache.contains(key.fileHash, key.chunkIndex))
+                        return;
+                    ByteBuffer buffer = bufferPool.acquire();
+                    try {
+                        readShared(key, entry, ahead, buffer);
+                    } finally {
+                        bufferPool.release(buffer);
+                    }
+                } catch (IOException e) {
+                    // Read-ahead is best effort
+                }
+            });
+        }
+    }
+
+    // Önbellek Metrikleri: İsabet oranı, tahliye ve önbellekten sunulan bayt
+    // bilgilerine erişim sağlar.
+    public ChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    // Tampon Havuzu: Ağ ve disk arasında taşınan parçalar için tekrar kullanılan
+    // direct tamponlar.
+    public ChunkBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    // İndirmeye Hazırla: Hedef dosyayı baştan son boyutuna getirir, böylece
+    // parçalar yazılırken dosya büyümez (parçalanma ve metadata güncellemesi
+    // olmaz).
+    public void preallocate(String fileName, long fileSize) throws IOException {
         if (bufferFolder == null)
             throw new IOException("Buffer folder not set");
         File target = new File(bufferFolder, fileName);
 
         try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            if (raf.length() != fileSize)
+                raf.setLength(fileSize);
+        }
+    }
+
+    // Parça Yaz (Write Chunk): Ağdan indirilen bir veri parçasını diske, doğru
+    // konumuna yazar. Konumsal yazma kullandığı için global kilide ihtiyaç duymaz;
+    // farklı parçalar aynı anda yazılabilir.
+    public void writeChunk(String fileName, int chunkIndex, ByteBuffer data) throws IOException {
+        File folder = bufferFolder;
+        if (folder == null)
+            throw new IOException("Buffer folder not set");
+        File target = new File(folder, fileName);
+
+        long start = System.nanoTime();
+        try (FileChannelPool.Handle handle = channelPool.acquire(target.toPath(), true)) {
             long offset = (long) chunkIndex * CHUNK_SIZE;
-            raf.seek(offset);
-            raf.write(data);
+            handle.writeFully(data.duplicate(), offset);
         }
+        diskWriteMs.observe((System.nanoTime() - start) / 1e6);
+    }
+
+    // Parça Yaz (Asenkron): Write-behind açıksa (-Dp2p.writeBehind=true) parçayı
+    // arka plan kuyruğuna bırakır, değilse doğrudan yazar. Tamponun sahipliği
+    // alınır ve yazma bitince havuza iade edilir.
+    public void writeChunkAsync(String fileName, int chunkIndex, ByteBuffer data) throws IOException {
+        if (WRITE_BEHIND) {
+            writeQueue.submit(fileName, chunkIndex, data);
+            return;
+        }
+        try {
+            writeChunk(fileName, chunkIndex, data);
+        } finally {
+            bufferPool.release(data);
+        }
+    }
+
+    // Yazmaları Tamamla: Dosyanın kuyrukta bekleyen tüm parçaları diske yazılana
+    // kadar bekler.
+    public void flushWrites(String fileName) throws IOException {
+        writeQueue.awaitWrites(fileName);
+    }
+
+    // Yazılamayan Parçalar: Write-behind kuyruğunda diske yazılamayan
+    // parçaların numaralarını bir kez döner. Dosyayı indiren görev bunları
+    // yeniden indirir.
+    public BitSet takeFailedWrites(String fileName) {
+        return writeQueue.takeFailures(fileName);
     }
 
     // SHA-256 Hesapla: Dosyanın içeriğine göre benzersiz "Parmak İzi"ni (Hash)
-    // oluşturur.
-    private String computeSha256(Path path) throws Exception {
+    // oluşturur. chunkIds verilirse parçaların kimliklerini de aynı okumada
+    // hesaplayıp ekler.
+    private ContentId computeSha256(Path path, List<ContentId> chunkIds) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA-256");
+        MessageDigest chunkMd = chunkIds != null ? MessageDigest.getInstance("SHA-256") : null;
+        long chunkFill = 0;
         try (InputStream is = Files.newInputStream(path)) {
             byte[] buffer = new byte[8192];
             int read;
             while ((read = is.read(buffer)) != -1) {
                 md.update(buffer, 0, read);
+                // Chunk ids in the same pass, split at CHUNK_SIZE boundaries
+                for (int off = 0; chunkMd != null && off < read;) {
+                    int n = (int) Math.min(read - off, CHUNK_SIZE - chunkFill);
+                    chunkMd.update(buffer, off, n);
+                    off += n;
+                    chunkFill += n;
+                    if (chunkFill == CHUNK_SIZE) {
+                        chunkIds.add(ContentId.fromBytes(chunkMd.digest(), 0));
+                        chunkFill = 0;
+                    }
+                }
             }
         }
-        byte[] digest = md.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : digest)
-            sb.append(String.format("%02x", b));
-        return sb.toString();
+        if (chunkMd != null && chunkFill > 0)
+            chunkIds.add(ContentId.fromBytes(chunkMd.digest(), 0));
+        return ContentId.fromBytes(md.digest(), 0);
     }
 }
@@ -0,0 +1,141 @@
+package com.cse471.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Systematic Reed-Solomon erasure code over GF(256). A group of k data chunks
+// is extended with repair blocks; repair block j is sum(c(j, i) * data_i) with
+// Cauchy coefficients c(j, i) = 1 / ((k + j) xor i). Every square submatrix of
+// a Cauchy matrix is invertible, so any k of the data chunks and repair blocks
+// rebuild the group, whichever peers they came from.
+public final class ReedSolomon {
+    public static final int MAX_SHARDS = 256; // Data chunks + repair blocks per group
+    private static final int POLYNOMIAL = 0x11D;
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MUL = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0)
+                x ^= POLYNOMIAL;
+        }
+        for (int i = 255; i < EXP.length; i++)
+            EXP[i] = EXP[i - 255];
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++)
+                MUL[a][b] = (byte) mul(a, b);
+        }
+    }
+
+    private ReedSolomon() {
+    }
+
+    // Onarım Katsayısı: k parçalık grupta j numaralı onarım bloğunun i. veri
+    // parçası için çarpanı.
+    public static int coefficient(int k, int parityIndex, int dataIndex) {
+        return inverse((k + parityIndex) ^ dataIndex);
+    }
+
+    // Ölçekli Ekle: dst ^= c * src (src'nin kalan baytları, konumu değişmez).
+    // Onarım bloğu veri parçaları tek tek eklenerek oluşturulur.
+    public static void addScaled(byte[] dst, ByteBuffer src, int coefficient) {
+        byte[] row = MUL[coefficient];
+        int base = src.position();
+        int length = Math.min(dst.length, src.remaining());
+        for (int p = 0; p < length; p++)
+            dst[p] ^= row[src.get(base + p) & 0xFF];
+    }
+
+    // Yeniden Oluştur: shards anahtarları 0..k-1 veri parçaları, k+j ise j.
+    // onarım bloğudur (hepsi shardSize uzunluğunda, kısa parçalar sıfırla
+    // doldurulmuş). En az k blok varsa eksik veri parçalarını (indeks -> bayt)
+    // döner, yoksa null.
+    public static Map<Integer, byte[]> reconstruct(Map<Integer, byte[]> shards, int k, int shardSize) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < k; i++) {
+            if (shards.containsKey(i))
+                rows.add(i);
+        }
+        for (Integer index : shards.keySet()) {
+            if (index >= k && rows.size() < k)
+                rows.add(index);
+        }
+        if (rows.size() < k)
+            return null;
+
+        // Rows of the encoding matrix for the shards we have, then invert it
+        int[][] matrix = new int[k][k];
+        for (int r = 0; r < k; r++) {
+            int index = rows.get(r);
+            for (int c = 0; c < k; c++)
+                matrix[r][c] = index < k ? (index == c ? 1 : 0) : coefficient(k, index - k, c);
+        }
+        int[][] inverse = invert(matrix);
+
+        Map<Integer, byte[]> recovered = new HashMap<>();
+        for (int d = 0; d < k; d++) {
+            if (shards.containsKey(d))
+                continue;
+            byte[] out = new byte[shardSize];
+            for (int r = 0; r < k; r++) {
+                if (inverse[d][r] != 0)
+                    addScaled(out, ByteBuffer.wrap(shards.get(rows.get(r))), inverse[d][r]);
+            }
+            recovered.put(d, out);
+        }
+        return recovered;
+    }
+
+    // Gauss-Jordan elimination over GF(256)
+    private static int[][] invert(int[][] matrix) {
+        int n = matrix.length;
+        int[][] a = new int[n][2 * n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(matrix[r], 0, a[r], 0, n);
+            a[r][n + r] = 1;
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            while (pivot < n && a[pivot][col] == 0)
+                pivot++;
+            if (pivot == n)
+                throw new IllegalArgumentException("Singular decode matrix");
+            int[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+
+            int scale = inverse(a[col][col]);
+            for (int c = 0; c < 2 * n; c++)
+                a[col][c] = mul(a[col][c], scale);
+            for (int r = 0; r < n; r++) {
+                int factor = a[r][col];
+                if (r == col || factor == 0)
+                    continue;
+                for (int c = 0; c < 2 * n; c++)
+                    a[r][c] ^= mul(factor, a[col][c]);
+            }
+        }
+        int[][] result = new int[n][n];
+        for (int r = 0; r < n; r++)
+            System.arraycopy(a[r], n, result[r], 0, n);
+        return result;
+    }
+
+    private static int mul(int a, int b) {
+        return a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int inverse(int a) {
+        if (a == 0)
+            throw new ArithmeticException("Zero has no inverse in GF(256)");
+        return EXP[255 - LOG[a]];
+    }
+}
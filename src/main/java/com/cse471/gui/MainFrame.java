@@ -169,6 +169,38 @@ public class MainFrame extends JFrame {
         tableScroll.setBorder(BorderFactory.createTitledBorder("Active Streams"));
         tableScroll.setPreferredSize(new Dimension(0, 150)); // Fixed height for table
 
+        // Right-click on a row: Pause / Resume / Cancel that download
+        JPopupMenu streamPopup = new JPopupMenu();
+        JMenuItem pauseItem = new JMenuItem("Pause");
+        JMenuItem resumeItem = new JMenuItem("Resume");
+        JMenuItem cancelItem = new JMenuItem("Cancel");
+        streamPopup.add(pauseItem);
+        streamPopup.add(resumeItem);
+        streamPopup.add(cancelItem);
+        activeStreamsTable.setComponentPopupMenu(streamPopup);
+        activeStreamsTable.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mousePressed(java.awt.event.MouseEvent evt) {
+                int row = activeStreamsTable.rowAtPoint(evt.getPoint());
+                if (row >= 0 && SwingUtilities.isRightMouseButton(evt))
+                    activeStreamsTable.setRowSelectionInterval(row, row);
+            }
+        });
+        pauseItem.addActionListener(e -> {
+            String video = getSelectedStream();
+            if (video != null)
+                com.cse471.app.AppController.getInstance().pauseDownload(video);
+        });
+        resumeItem.addActionListener(e -> {
+            String video = getSelectedStream();
+            if (video != null)
+                com.cse471.app.AppController.getInstance().resumeDownload(video);
+        });
+        cancelItem.addActionListener(e -> {
+            String video = getSelectedStream();
+            if (video != null)
+                com.cse471.app.AppController.getInstance().cancelDownload(video);
+        });
+
         // Video Player
         streamPlayer = new com.cse471.player.StreamPlayer();
         streamPlayer.setBorder(BorderFactory.createTitledBorder("Video Player")); // Clean border
@@ -280,6 +312,12 @@ public class MainFrame extends JFrame {
                 .scrollRectToVisible(activeStreamsTable.getCellRect(activeStreamsTable.getRowCount() - 1, 0, true));
     }
 
+    // Seçili İndirme: Tabloda seçili satırın video adını döner (yoksa null).
+    private String getSelectedStream() {
+        int row = activeStreamsTable.getSelectedRow();
+        return row >= 0 ? (String) activeStreamsModel.getValueAt(row, 0) : null;
+    }
+
     // Log Yaz: Kullanıcıya bilgi vermek için alt kısımdaki konsola mesaj yazar.
     public void log(String message) {
         eventLog.append(message + "\n");
@@ -0,0 +1,232 @@
+package com.cse471.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+public class MetricsRegistry {
+    private static final MetricsRegistry instance = new MetricsRegistry();
+    // Latency buckets (ms) shared by every histogram
+    private static final double[] BUCKETS_MS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+    // Label values past this many share one "other" series, so a label fed from
+    // peer IDs or file names cannot grow the export without bound
+    static final int MAX_SERIES_PER_FAMILY = 32;
+    static final String OVERFLOW_LABEL = "other";
+
+    // Metric Name -> Family (help, type, and one series per label value)
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    // Singleton Erişimi: Uygulama genelinde tek bir metrik kaydı döndürür.
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    // Sayaç: Yalnızca artan bir değer (ör. gönderilen bayt). Aynı isim ve etiketle
+    // tekrar çağrılırsa aynı sayaç döner.
+    public Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    public Counter counter(String name, String help, String labelName, String labelValue) {
+        return (Counter) series(family(name, help, "counter"), labelName, labelValue, Counter::new);
+    }
+
+    // Histogram: Gecikme dağılımı (ms), sabit kovalarla.
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+
+    public Histogram histogram(String name, String help, String labelName, String labelValue) {
+        return (Histogram) series(family(name, help, "histogram"), labelName, labelValue, Histogram::new);
+    }
+
+    // Gösterge (Gauge): Değeri okunduğu anda verilen fonksiyondan alınır (ör.
+    // aktif bağlantı sayısı). Aynı isimle tekrar kaydedilirse yenisi geçerlidir.
+    public void gauge(String name, String help, DoubleSupplier value) {
+        family(name, help, "gauge").series.put("", new Sampled(value));
+    }
+
+    // Sayaç Fonksiyonu: Başka bir sınıfın tuttuğu artan sayıyı (ör. önbellek
+    // isabetleri) sayaç olarak yayınlar.
+    public void counterFunction(String name, String help, DoubleSupplier value) {
+        family(name, help, "counter").series.put("", new Sampled(value));
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(help, type));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        return family;
+    }
+
+    // Seri Bul: Etiket değerinin serisini döner; ailede sınır kadar seri varsa
+    // yeni değerler "other" serisinde toplanır.
+    private static Object series(Family family, String labelName, String labelValue, Supplier<Object> create) {
+        String key = labelText(labelName, labelValue);
+        Object metric = family.series.get(key);
+        if (metric != null)
+            return metric;
+        if (labelName != null && family.series.size() >= MAX_SERIES_PER_FAMILY)
+            key = labelText(labelName, OVERFLOW_LABEL);
+        return family.series.computeIfAbsent(key, k -> create.get());
+    }
+
+    private static String labelText(String labelName, String labelValue) {
+        if (labelName == null)
+            return "";
+        return labelName + "=\"" + labelValue.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    // Prometheus Formatı: Tüm metrikleri metin formatında (text/plain; version
+    // 0.0.4) yazar.
+    public void writePrometheus(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP " + name + " " + family.help + "\n");
+            out.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof Histogram) {
+                    ((Histogram) metric).write(out, name, labels);
+                } else {
+                    out.write(name + braces(labels) + " " + format(valueOf(metric)) + "\n");
+                }
+            }
+        }
+    }
+
+    // Anlık Değerler: Her serinin tek sayılık özeti (histogramlar için ortalama);
+    // JMX özniteliklerinin kaynağı.
+    public Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            for (Map.Entry<String, Object> series : entry.getValue().series.entrySet()) {
+                String key = entry.getKey() + braces(series.getKey());
+                Object metric = series.getValue();
+                if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    values.put(key + "_count", (double) histogram.getCount());
+                    values.put(key + "_mean", histogram.getMean());
+                } else {
+                    values.put(key, valueOf(metric));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static double valueOf(Object metric) {
+        if (metric instanceof Counter)
+            return ((Counter) metric).get();
+        try {
+            return ((Sampled) metric).value.getAsDouble();
+        } catch (RuntimeException e) {
+            return Double.NaN; // A broken gauge must not break the whole export
+        }
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (value == Math.rint(value) && !Double.isInfinite(value))
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS_MS.length];
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        // Gözlem Ekle: Süreyi ilk uyan kovaya sayar (kovalar yazılırken
+        // kümülatif hale getirilir).
+        public void observe(double valueMs) {
+            for (int i = 0; i < BUCKETS_MS.length; i++) {
+                if (valueMs <= BUCKETS_MS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(valueMs);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        private void write(Writer out, String name, String labels) throws IOException {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS_MS.length; i++) {
+                cumulative += buckets[i].sum();
+                out.write(name + "_bucket{" + prefix + "le=\"" + format(BUCKETS_MS[i]) + "\"} " + cumulative + "\n");
+            }
+            long total = count.sum();
+            out.write(name + "_bucket{" + prefix + "le=\"+Inf\"} " + Math.max(total, cumulative) + "\n");
+            out.write(name + "_sum" + braces(labels) + " " + format(sum.sum()) + "\n");
+            out.write(name + "_count" + braces(labels) + " " + Math.max(total, cumulative) + "\n");
+        }
+    }
+
+    private static final class Sampled {
+        private final DoubleSupplier value;
+
+        Sampled(DoubleSupplier value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> series = new ConcurrentHashMap<>(); // Label text -> Metric
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.cse471.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Exposes the registry on 127.0.0.1:<p2p.metricsPort>/metrics in Prometheus
+// text format (0 = no HTTP endpoint) and as the JMX bean com.cse471:type=Metrics.
+public class MetricsServer {
+    public static final int PORT = Integer.getInteger("p2p.metricsPort", 0);
+    private static final String OBJECT_NAME = "com.cse471:type=Metrics";
+
+    private final MetricsRegistry registry;
+    private HttpServer httpServer;
+    private ObjectName jmxName;
+
+    public MetricsServer(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Başlat: JMX nesnesini kaydeder ve port ayarlıysa HTTP ucunu açar. Hata
+    // durumunda uygulama metriksiz çalışmaya devam eder.
+    public void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsBean(), name);
+                jmxName = name;
+            }
+        } catch (Exception e) {
+            System.err.println("Metrics: JMX registration failed: " + e.getMessage());
+        }
+
+        if (PORT <= 0)
+            return;
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+            httpServer.createContext("/metrics", this::handleScrape);
+            httpServer.start();
+            System.out.println("Metrics: Serving http://127.0.0.1:" + PORT + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Metrics: Could not bind port " + PORT + ": " + e.getMessage());
+            httpServer = null;
+        }
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (jmxName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(jmxName);
+            } catch (Exception e) {
+                // Already gone
+            }
+            jmxName = null;
+        }
+    }
+
+    private void handleScrape(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringWriter text = new StringWriter();
+            registry.writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Read-only bean: one numeric attribute per series, computed on each read
+    private class MetricsBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) {
+            return registry.snapshot().get(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Double> values = registry.snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute))
+                    list.add(new Attribute(attribute, values.get(attribute)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("No operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String key : registry.snapshot().keySet())
+                attributes.add(new MBeanAttributeInfo(key, "java.lang.Double", key, true, false, false));
+            return new MBeanInfo(MetricsServer.class.getName(), "P2P metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
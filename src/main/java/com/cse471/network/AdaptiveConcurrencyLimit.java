@@ -0,0 +1,71 @@
+package com.cse471.network;
+
+public class AdaptiveConcurrencyLimit {
+    private static final int MIN_LIMIT = 4;
+    private static final int MAX_LIMIT = Integer.getInteger("p2p.maxConcurrentRequests", 64);
+    private static final int INITIAL_LIMIT = Math.min(16, MAX_LIMIT);
+    private static final long TARGET_LATENCY_MS = Long.getLong("p2p.targetLatencyMs", 2000);
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final long DECREASE_COOLDOWN_MS = 1000; // One decrease per burst of slow responses
+
+    private double limit = INITIAL_LIMIT;
+    private int inFlight = 0;
+    private long lastDecrease = 0;
+    private long rejected = 0;
+
+    // İzin Al: Eşzamanlı istek sayısı sınırın altındaysa bir yer ayırır ve true
+    // döner; sınır doluysa istek reddedilir (aşırı yük).
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    // İzni Bırak: Bağlantı kapandığında ayrılan yeri geri verir. Süre ölçümü
+    // bağlantı başına değil istek başına sample() ile bildirilir.
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    // Süre Bildir (AIMD): Tek bir isteğin işlenme süresiyle çağrılır (bant
+    // genişliği beklemesi hariç). Süre hedefin altındaysa ve sınır gerçekten
+    // kullanılıyorsa sınır yavaşça artar (istek başına +1/sınır, yani tur başına
+    // +1); hedef aşıldıysa veya istek hata ile bittiyse sınır %10 düşürülür.
+    public synchronized void sample(long latencyMs, boolean failed) {
+        long now = System.currentTimeMillis();
+        if (failed || latencyMs > TARGET_LATENCY_MS) {
+            if (now - lastDecrease >= DECREASE_COOLDOWN_MS) {
+                limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                lastDecrease = now;
+            }
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(MAX_LIMIT, limit + 1.0 / limit);
+        }
+    }
+
+    // Sınır Aşıldı mı: Sınır, açık bağlantılar izin aldıktan sonra düştüyse
+    // true döner. Açık v2 oturumları bu durumda yeni aktarım isteklerini geri
+    // çevirir, böylece yük bağlantılar kapanmayı beklemeden azalır.
+    public synchronized boolean isOverLimit() {
+        return inFlight > (int) limit;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public static int getMaxLimit() {
+        return MAX_LIMIT;
+    }
+}
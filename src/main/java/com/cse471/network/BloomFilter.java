@@ -0,0 +1,108 @@
+package com.cse471.network;
+
+import java.util.Collection;
+
+public final class BloomFilter {
+    private static final int BITS_PER_ENTRY = 10; // ~1% false positives with 7 hash functions
+    private static final int NUM_HASHES = 7;
+    private static final int MIN_BYTES = 8;
+    private static final int MAX_BYTES = 1024; // Keeps an announcement inside one unfragmented datagram
+
+    private final byte[] bits;
+    private final int numHashes;
+
+    private BloomFilter(byte[] bits, int numHashes) {
+        this.bits = bits;
+        this.numHashes = numHashes;
+    }
+
+    // Filtre Oluştur: Verilen içerik hash'lerinden filtreyi kurar. Boyut öğe
+    // sayısına göre seçilir; çok büyük kataloglarda MAX_BYTES ile sınırlanır
+    // (yanlış pozitif oranı artar ama yanlış negatif olmaz).
+    public static BloomFilter of(Collection<String> hashes) {
+        int size = (int) Math.min(MAX_BYTES, Math.max(MIN_BYTES, ((long) hashes.size() * BITS_PER_ENTRY + 7) / 8));
+        BloomFilter filter = new BloomFilter(new byte[size], NUM_HASHES);
+        for (String hash : hashes)
+            filter.add(hash);
+        return filter;
+    }
+
+    // Byte Dizisinden Oku: [Hash Sayısı (1)][Bitler] formatındaki filtreyi çözer.
+    // Geçersizse null.
+    public static BloomFilter fromBytes(byte[] data, int offset, int length) {
+        if (length < 2 || length - 1 > MAX_BYTES)
+            return null;
+        int hashes = data[offset] & 0xFF;
+        if (hashes == 0)
+            return null;
+        byte[] bits = new byte[length - 1];
+        System.arraycopy(data, offset + 1, bits, 0, bits.length);
+        return new BloomFilter(bits, hashes);
+    }
+
+    public byte[] toBytes() {
+        byte[] out = new byte[bits.length + 1];
+        out[0] = (byte) numHashes;
+        System.arraycopy(bits, 0, out, 1, bits.length);
+        return out;
+    }
+
+    private void add(String hash) {
+        long h1 = hash1(hash);
+        long h2 = hash2(hash);
+        long bitCount = bits.length * 8L;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, bitCount);
+            bits[bit >>> 3] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    // Var Olabilir mi: false ise hash kesinlikle katalogda yoktur; true ise
+    // büyük olasılıkla vardır.
+    public boolean mightContain(String hash) {
+        long h1 = hash1(hash);
+        long h2 = hash2(hash);
+        long bitCount = bits.length * 8L;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    // Boş mu: Hiç bit set edilmemişse katalog boştur.
+    public boolean isEmpty() {
+        for (byte b : bits) {
+            if (b != 0)
+                return false;
+        }
+        return true;
+    }
+
+    // Content hashes are hex SHA-256 digests and already uniformly distributed,
+    // so two 64-bit slices serve as the base hashes for double hashing
+    private static long hash1(String hash) {
+        return hash.length() >= 32 ? parseHex(hash, 0) : mix(hash.hashCode());
+    }
+
+    private static long hash2(String hash) {
+        return (hash.length() >= 32 ? parseHex(hash, 16) : mix(hash.hashCode() * 31L + 17)) | 1L;
+    }
+
+    private static long parseHex(String hash, int start) {
+        long value = 0;
+        for (int i = start; i < start + 16; i++) {
+            int digit = Character.digit(hash.charAt(i), 16);
+            value = (value << 4) | (digit < 0 ? 0 : digit);
+        }
+        return value;
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return x;
+    }
+}
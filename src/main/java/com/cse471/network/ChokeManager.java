@@ -0,0 +1,147 @@
+package com.cse471.network;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class ChokeManager {
+    private static final int UPLOAD_SLOTS = Integer.getInteger("p2p.uploadSlots", 4);
+    private static final long RECHOKE_INTERVAL_MS = 10_000;
+    private static final int OPTIMISTIC_EVERY_ROUNDS = 3; // Optimistic slot rotates every 30 s
+    private static final long INTEREST_TIMEOUT_MS = 20_000; // No request for this long = not interested
+    private static final double RATE_SMOOTHING = 0.5; // EWMA weight of the last interval
+
+    // Per requester (IP): last request time and how fast they upload to us
+    private final Map<String, PeerStats> stats = new ConcurrentHashMap<>();
+    private final Set<String> unchoked = ConcurrentHashMap.newKeySet();
+    private volatile String optimisticPeer;
+    private ScheduledExecutorService scheduler;
+    private long round = 0;
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Choker");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::rechoke, RECHOKE_INTERVAL_MS, RECHOKE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    // Yükleme İzni: İstek geldiğinde çağrılır. Peer'ın slotu varsa veya boş slot
+    // varsa (boşta bekleyen seeder kimseyi geri çevirmez) true; aksi halde
+    // peer tıkalıdır (choked) ve "meşgul" cevabı alır.
+    public synchronized boolean tryAdmit(String requester) {
+        stats.computeIfAbsent(requester, k -> new PeerStats()).lastRequest = System.currentTimeMillis();
+        if (unchoked.contains(requester))
+            return true;
+        if (unchoked.size() < UPLOAD_SLOTS) {
+            unchoked.add(requester);
+            stats.get(requester).everUnchoked = true;
+            return true;
+        }
+        return false;
+    }
+
+    // İndirme Kaydı: Peer'dan aldığımız veriyi sayar (karşılıklılık ölçüsü).
+    public void recordDownloaded(String peer, long bytes) {
+        PeerStats peerStats = stats.computeIfAbsent(peer, k -> new PeerStats());
+        synchronized (peerStats) {
+            peerStats.bytesThisInterval += bytes;
+        }
+    }
+
+    // Yeniden Tıka (Rechoke): Her 10 saniyede ilgili (son 20 sn'de istek atmış)
+    // peerlar bize yükleme hızlarına göre sıralanır; en iyi (slot - 1) tanesi
+    // açılır. Son slot iyimser (optimistic) açmadır: 30 saniyede bir kalan
+    // ilgili peerlar arasından rastgele seçilir, tercihen hiç açılmamış yeni
+    // gelenler. Böylece yeni bir peer da bize bir şey verebileceğini gösterme
+    // fırsatı bulur.
+    synchronized void rechoke() {
+        try {
+            round++;
+            long now = System.currentTimeMillis();
+            List<String> interested = new ArrayList<>();
+            for (Map.Entry<String, PeerStats> entry : stats.entrySet()) {
+                PeerStats peerStats = entry.getValue();
+                synchronized (peerStats) {
+                    double intervalRate = peerStats.bytesThisInterval * 1000.0 / RECHOKE_INTERVAL_MS;
+                    peerStats.rate = RATE_SMOOTHING * intervalRate + (1 - RATE_SMOOTHING) * peerStats.rate;
+                    peerStats.bytesThisInterval = 0;
+                }
+                if (now - peerStats.lastRequest <= INTEREST_TIMEOUT_MS)
+                    interested.add(entry.getKey());
+                else if (peerStats.rate < 1 && now - peerStats.lastRequest > 10 * INTEREST_TIMEOUT_MS)
+                    stats.remove(entry.getKey()); // Long gone
+            }
+
+            interested.sort((a, b) -> Double.compare(stats.get(b).rate, stats.get(a).rate));
+            Set<String> next = new HashSet<>();
+            for (String peer : interested) {
+                if (next.size() >= UPLOAD_SLOTS - 1)
+                    break;
+                next.add(peer);
+            }
+
+            // Optimistic Unchoke
+            if (optimisticPeer == null || round % OPTIMISTIC_EVERY_ROUNDS == 0 || !interested.contains(optimisticPeer)
+                    || next.contains(optimisticPeer)) {
+                List<String> candidates = new ArrayList<>();
+                List<String> newcomers = new ArrayList<>();
+                for (String peer : interested) {
+                    if (next.contains(peer))
+                        continue;
+                    candidates.add(peer);
+                    if (!stats.get(peer).everUnchoked)
+                        newcomers.add(peer);
+                }
+                List<String> pool = newcomers.isEmpty() ? candidates : newcomers;
+                optimisticPeer = pool.isEmpty() ? null : pool.get(ThreadLocalRandom.current().nextInt(pool.size()));
+            }
+            if (optimisticPeer != null)
+                next.add(optimisticPeer);
+
+            for (String peer : next) {
+                PeerStats peerStats = stats.get(peer);
+                if (peerStats != null)
+                    peerStats.everUnchoked = true;
+            }
+            if (!next.equals(unchoked)) {
+                unchoked.retainAll(next);
+                unchoked.addAll(next);
+                System.out.println("Upload slots: " + unchoked + (optimisticPeer != null
+                        ? " (optimistic: " + optimisticPeer + ")"
+                        : ""));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    Set<String> getUnchoked() {
+        return unchoked;
+    }
+
+    String getOptimisticPeer() {
+        return optimisticPeer;
+    }
+
+    private static final class PeerStats {
+        private volatile long lastRequest = 0;
+        private long bytesThisInterval = 0;
+        private volatile double rate = 0; // Bytes/s they sent us (EWMA)
+        private volatile boolean everUnchoked = false;
+    }
+}
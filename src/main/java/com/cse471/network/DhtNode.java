@@ -0,0 +1,549 @@
+package com.cse471.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class DhtNode {
+    public static final byte DHT_RPC = 0x05; // TCP command
+    private static final byte RPC_FIND_NODE = 0x01;
+    private static final byte RPC_FIND_PROVIDERS = 0x02;
+    private static final byte RPC_STORE = 0x03;
+
+    private static final int ID_BITS = 256; // Node ids and content hashes are both SHA-256
+    private static final int K = 8; // Bucket size and replication factor
+    private static final int ALPHA = 3; // Parallel queries per lookup round
+    private static final long RPC_TIMEOUT_MS = 5000;
+    private static final long RECORD_TTL_MS = 30 * 60_000; // Provider records expire after 30 minutes...
+    private static final long REPUBLISH_MS = 10 * 60_000; // ...and are republished every 10 minutes
+    private static final long TABLE_REFRESH_MS = 10_000; // Known peers are folded into the routing table
+
+    private final String myPeerId;
+    private final byte[] myNodeId;
+    private final int myTcpPort;
+    private final TransferManager transferManager;
+    private final Supplier<Collection<String>> localHashes;
+
+    // Routing Table: bucket i holds contacts whose distance has bit length i+1
+    private final List<LinkedList<PeerInfo>> buckets = new ArrayList<>();
+    // Provider Records: Content Hash -> (Peer ID -> Record)
+    private final ConcurrentHashMap<String, Map<String, ProviderRecord>> providers = new ConcurrentHashMap<>();
+
+    private final ExecutorService queryExecutor = Executors.newFixedThreadPool(ALPHA * 2, r -> {
+        Thread t = new Thread(r, "DHT-Query");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledExecutorService scheduler;
+
+    // Yapıcı Metot: Düğüm kimliğini Peer ID'nin SHA-256 özetinden üretir (içerik
+    // hash'leri ile aynı anahtar uzayı). localHashes, bu düğümün sağladığı
+    // içeriklerin hash listesini verir.
+    public DhtNode(String myPeerId, int myTcpPort, TransferManager transferManager,
+            Supplier<Collection<String>> localHashes) {
+        this.myPeerId = myPeerId;
+        this.myNodeId = nodeIdOf(myPeerId);
+        this.myTcpPort = myTcpPort;
+        this.transferManager = transferManager;
+        this.localHashes = localHashes;
+        for (int i = 0; i < ID_BITS; i++)
+            buckets.add(new LinkedList<>());
+    }
+
+    // Servisi Başlatır: Yönlendirme tablosunu bilinen peerlarla doldurur ve
+    // yerel içerikleri düzenli olarak yayınlar.
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DHT-Maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshFromPeerManager, 2000, TABLE_REFRESH_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::publishAll, 15_000, REPUBLISH_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::expireRecords, REPUBLISH_MS, REPUBLISH_MS, TimeUnit.MILLISECONDS);
+        System.out.println("DHT node started. Node ID: " + toHex(myNodeId).substring(0, 16) + "...");
+    }
+
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        queryExecutor.shutdownNow();
+    }
+
+    // --- Routing Table ---
+
+    // Kişi Ekle: Peer'ı uzaklığına göre ilgili kovaya ekler. Kova doluysa ve en
+    // eski kişi hâlâ canlıysa yeni kişi eklenmez (Kademlia uzun yaşayanları
+    // tercih eder).
+    void addContact(PeerInfo peer) {
+        if (peer.getId().equals(myPeerId))
+            return;
+        int index = bucketIndex(distance(myNodeId, nodeIdOf(peer.getId())));
+        if (index < 0)
+            return;
+        LinkedList<PeerInfo> bucket = buckets.get(index);
+        synchronized (bucket) {
+            bucket.removeIf(p -> p.getId().equals(peer.getId()));
+            if (bucket.size() >= K) {
+                PeerInfo oldest = bucket.getFirst();
+                if (!PeerManager.getInstance().isSuspected(oldest.getId())
+                        && PeerManager.getInstance().getPeer(oldest.getId()) != null)
+                    return;
+                bucket.removeFirst();
+            }
+            bucket.addLast(peer);
+        }
+    }
+
+    private void removeContact(String peerId) {
+        int index = bucketIndex(distance(myNodeId, nodeIdOf(peerId)));
+        if (index < 0)
+            return;
+        LinkedList<PeerInfo> bucket = buckets.get(index);
+        synchronized (bucket) {
+            bucket.removeIf(p -> p.getId().equals(peerId));
+        }
+    }
+
+    private void refreshFromPeerManager() {
+        for (PeerInfo peer : PeerManager.getInstance().getPeersByHealth())
+            addContact(peer);
+    }
+
+    // En Yakınlar: Yönlendirme tablosundaki anahtara (XOR uzaklığına göre) en
+    // yakın count kişiyi döner.
+    private List<PeerInfo> closestContacts(byte[] key, int count) {
+        List<PeerInfo> all = new ArrayList<>();
+        for (LinkedList<PeerInfo> bucket : buckets) {
+            synchronized (bucket) {
+                all.addAll(bucket);
+            }
+        }
+        all.sort(byDistanceTo(key));
+        return all.size() > count ? new ArrayList<>(all.subList(0, count)) : all;
+    }
+
+    // --- Public API ---
+
+    // İçerik Yayınla: Bu düğümün hash'e sahip olduğunu anahtara en yakın K
+    // düğüme kaydeder. En yakınlar, erken durmayan (tamamlanmış) bir düğüm
+    // aramasından alınır; sağlayıcı aramasının sonucu kullanılmaz.
+    public void publish(String contentHash) {
+        byte[] key = fromHex(contentHash);
+        if (key == null)
+            return;
+        LookupResult nodes = iterativeLookup(key, false);
+        for (PeerInfo node : nodes.closest) {
+            try {
+                rpc(node, RPC_STORE, key);
+            } catch (IOException e) {
+                removeContact(node.getId());
+            }
+        }
+    }
+
+    // Yerel İçeriği Yayınla: Kök klasör değiştiğinde tüm hash'leri arka planda
+    // yeniden yayınlar.
+    public void publishLocalContent() {
+        if (scheduler != null)
+            scheduler.execute(this::publishAll);
+    }
+
+    private void publishAll() {
+        try {
+            for (String hash : localHashes.get())
+                publish(hash);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Sağlayıcıları Bul: Hash'e sahip peerları O(log N) adımda bulur. Her turda
+    // en yakın ALPHA düğüme paralel sorgu atılır.
+    public LookupResult findProviders(String contentHash) {
+        byte[] key = fromHex(contentHash);
+        if (key == null)
+            return new LookupResult();
+        LookupResult result = iterativeLookup(key, true);
+        Map<String, ProviderRecord> local = providers.get(contentHash);
+        if (local != null) {
+            for (ProviderRecord record : local.values()) {
+                if (!record.peerId.equals(myPeerId))
+                    result.providers.putIfAbsent(record.peerId, record.toPeerInfo());
+            }
+        }
+        return result;
+    }
+
+    // Yinelemeli Arama: Kademlia node lookup. Aday listesi anahtara en yakın K
+    // düğümdür; her turda henüz sorulmamış en yakın ALPHA düğüme paralel sorgu
+    // atılır, en yakın K düğümün hepsi sorulunca durulur. Sağlayıcı aramasında
+    // ilk sağlayıcı gelince erken durulur; o zaman liste yakınsamamıştır ve
+    // closest boş bırakılır.
+    private LookupResult iterativeLookup(byte[] key, boolean wantProviders) {
+        long start = System.currentTimeMillis();
+        LookupResult result = new LookupResult();
+        List<PeerInfo> shortlist = closestContacts(key, K);
+        Set<String> queried = new HashSet<>();
+        Set<String> known = new HashSet<>();
+        for (PeerInfo p : shortlist)
+            known.add(p.getId());
+
+        while (true) {
+            List<PeerInfo> round = new ArrayList<>();
+            for (PeerInfo candidate : shortlist) {
+                if (round.size() >= ALPHA)
+                    break;
+                if (!queried.contains(candidate.getId()))
+                    round.add(candidate);
+            }
+            if (round.isEmpty())
+                break;
+            result.hops++;
+
+            Map<PeerInfo, Future<RpcResponse>> pending = new LinkedHashMap<>();
+            for (PeerInfo node : round) {
+                queried.add(node.getId());
+                pending.put(node, queryExecutor
+                        .submit(() -> rpc(node, wantProviders ? RPC_FIND_PROVIDERS : RPC_FIND_NODE, key)));
+            }
+
+            for (Map.Entry<PeerInfo, Future<RpcResponse>> entry : pending.entrySet()) {
+                RpcResponse response;
+                try {
+                    response = entry.getValue().get(RPC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    entry.getValue().cancel(true);
+                    shortlist.remove(entry.getKey());
+                    removeContact(entry.getKey().getId());
+                    continue;
+                }
+                result.contacted++;
+                for (PeerInfo provider : response.providers)
+                    result.providers.putIfAbsent(provider.getId(), provider);
+                for (PeerInfo contact : response.contacts) {
+                    if (!contact.getId().equals(myPeerId) && known.add(contact.getId())) {
+                        shortlist.add(contact);
+                        addContact(contact);
+                    }
+                }
+            }
+
+            if (wantProviders && !result.providers.isEmpty()) {
+                result.converged = false; // Final rounds skipped, the shortlist is not the K closest
+                break;
+            }
+            shortlist.sort(byDistanceTo(key));
+            while (shortlist.size() > K)
+                shortlist.remove(shortlist.size() - 1);
+        }
+
+        if (result.converged)
+            result.closest = shortlist;
+        result.elapsedMs = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    // --- RPC (Client) ---
+
+    // İstek Gönder: [0x05][Tür][Gönderen kişi bilgisi][Anahtar (32)] yollar;
+    // cevap [Sağlayıcılar][En yakın kişiler] olarak okunur.
+    private RpcResponse rpc(PeerInfo node, byte type, byte[] key) throws IOException {
+        try (Socket socket = transferManager.openPeerConnection(node);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeByte(DHT_RPC);
+            out.writeByte(type);
+            out.writeUTF(myPeerId);
+            out.write(addressBytes(socket.getLocalAddress()));
+            out.writeInt(myTcpPort);
+            out.write(key);
+            out.flush();
+
+            RpcResponse response = new RpcResponse();
+            response.providers = readContacts(in, node);
+            response.contacts = readContacts(in, node);
+            addContact(node); // Responded, so it is alive
+            return response;
+        }
+    }
+
+    // --- RPC (Server) ---
+
+    // [Sunucu] DHT İsteği: Gönderenin kişi bilgisini tabloya ekler; STORE ise
+    // sağlayıcı kaydını saklar, FIND ise sağlayıcıları ve en yakın kişileri döner.
+    public void handleRpc(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        byte type = in.readByte();
+        String senderId = in.readUTF();
+        byte[] senderIp = new byte[4];
+        in.readFully(senderIp);
+        int senderPort = in.readInt();
+        byte[] key = new byte[32];
+        in.readFully(key);
+
+        PeerInfo sender = new PeerInfo(senderId, InetAddress.getByAddress(senderIp), senderPort);
+        if (!socket.getInetAddress().equals(sender.getAddress()))
+            sender.setRelayAddress(socket.getInetAddress()); // Bridged by a relay
+        addContact(sender);
+
+        String hash = toHex(key);
+        List<PeerInfo> found = new ArrayList<>();
+        if (type == RPC_STORE) {
+            storeProvider(hash, new ProviderRecord(sender));
+        } else if (type == RPC_FIND_PROVIDERS) {
+            Map<String, ProviderRecord> records = providers.get(hash);
+            if (records != null) {
+                long now = System.currentTimeMillis();
+                for (ProviderRecord record : records.values()) {
+                    if (record.expiresAt > now)
+                        found.add(record.toPeerInfo());
+                }
+            }
+            if (localHashes.get().contains(hash))
+                found.add(selfRecord().toPeerInfo(socket.getLocalAddress()));
+        }
+
+        List<PeerInfo> closest = closestContacts(key, K);
+        closest.removeIf(p -> p.getId().equals(senderId));
+        writeContacts(out, found);
+        writeContacts(out, closest);
+        out.flush();
+    }
+
+    private void storeProvider(String hash, ProviderRecord record) {
+        providers.computeIfAbsent(hash, k -> new ConcurrentHashMap<>()).put(record.peerId, record);
+    }
+
+    private void expireRecords() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map<String, ProviderRecord>> it = providers.values().iterator(); it.hasNext();) {
+            Map<String, ProviderRecord> records = it.next();
+            records.values().removeIf(r -> r.expiresAt <= now);
+            if (records.isEmpty())
+                it.remove();
+        }
+    }
+
+    private ProviderRecord selfRecord() {
+        return new ProviderRecord(myPeerId, null, myTcpPort, null);
+    }
+
+    // Kişi Listesi Yaz: [Sayı] + her biri için [ID][IP][Port][Relay var mı][Relay
+    // IP]
+    private void writeContacts(DataOutputStream out, List<PeerInfo> contacts) throws IOException {
+        out.writeInt(contacts.size());
+        for (PeerInfo peer : contacts) {
+            out.writeUTF(peer.getId());
+            out.write(addressBytes(peer.getAddress()));
+            out.writeInt(peer.getCommandPort());
+            out.writeByte(peer.getRelayAddress() != null ? 1 : 0);
+            if (peer.getRelayAddress() != null)
+                out.write(addressBytes(peer.getRelayAddress()));
+        }
+    }
+
+    // Kişi Listesi Oku: Cevap veren düğümün doğrudan ulaştığı kişilere onun
+    // üzerinden, Relay arkasındakilere ise o Relay'e doğrudan ulaşabiliyorsak o
+    // Relay üzerinden gidilir. Zaten bildiğimiz peerlar için kendi yolumuz
+    // kullanılır.
+    private List<PeerInfo> readContacts(DataInputStream in, PeerInfo responder) throws IOException {
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Peer overloaded"); // Admission control reply
+        List<PeerInfo> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            byte[] ip = new byte[4];
+            in.readFully(ip);
+            int port = in.readInt();
+            InetAddress relay = null;
+            if (in.readByte() != 0) {
+                byte[] relayIp = new byte[4];
+                in.readFully(relayIp);
+                relay = InetAddress.getByAddress(relayIp);
+            }
+
+            PeerInfo known = PeerManager.getInstance().getPeer(id);
+            if (known != null) {
+                result.add(known);
+                continue;
+            }
+            PeerInfo contact = new PeerInfo(id, InetAddress.getByAddress(ip), port);
+            if (relay == null && responder.getRelayAddress() == null) {
+                // Same subnet as the responder, or reachable through it
+                if (!contact.getAddress().equals(responder.getAddress()))
+                    contact.setRelayAddress(responder.getAddress());
+            } else if (relay != null) {
+                PeerInfo relayPeer = PeerManager.getInstance().getPeerByIp(relay);
+                if (relayPeer == null || relayPeer.getRelayAddress() != null)
+                    continue; // More than one relay hop away
+                contact.setRelayAddress(relay);
+            } else {
+                continue;
+            }
+            result.add(contact);
+        }
+        return result;
+    }
+
+    // --- Helpers ---
+
+    private Comparator<PeerInfo> byDistanceTo(byte[] key) {
+        Map<String, byte[]> cache = new HashMap<>();
+        return (a, b) -> compareUnsigned(
+                cache.computeIfAbsent(a.getId(), id -> distance(key, nodeIdOf(id))),
+                cache.computeIfAbsent(b.getId(), id -> distance(key, nodeIdOf(id))));
+    }
+
+    private static byte[] distance(byte[] a, byte[] b) {
+        byte[] d = new byte[a.length];
+        for (int i = 0; i < a.length; i++)
+            d[i] = (byte) (a[i] ^ b[i]);
+        return d;
+    }
+
+    // Kova İndeksi: Uzaklığın bit uzunluğu - 1 (uzaklık 0 ise -1).
+    private static int bucketIndex(byte[] distance) {
+        for (int i = 0; i < distance.length; i++) {
+            int b = distance[i] & 0xFF;
+            if (b != 0)
+                return (distance.length - i - 1) * 8 + (31 - Integer.numberOfLeadingZeros(b));
+        }
+        return -1;
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return 0;
+    }
+
+    static byte[] nodeIdOf(String peerId) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(peerId.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] addressBytes(InetAddress address) {
+        byte[] raw = address != null ? address.getAddress() : null;
+        return raw != null && raw.length == 4 ? raw : new byte[4];
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex == null || hex.length() != 64)
+            return null;
+        byte[] out = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0)
+                return null;
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    // Arama Sonucu: Bulunan sağlayıcılar, anahtara en yakın düğümler ve ölçümler
+    // (tur sayısı, sorgulanan düğüm, süre).
+    public static final class LookupResult {
+        private final Map<String, PeerInfo> providers = new LinkedHashMap<>();
+        private List<PeerInfo> closest = new ArrayList<>(); // Only filled by a converged lookup
+        private boolean converged = true;
+        private int hops = 0;
+        private int contacted = 0;
+        private long elapsedMs = 0;
+
+        public List<PeerInfo> getProviders() {
+            return new ArrayList<>(providers.values());
+        }
+
+        public int getHops() {
+            return hops;
+        }
+
+        // Yakınsadı mı: Arama en yakın K düğümün hepsini sorduysa true.
+        public boolean isConverged() {
+            return converged;
+        }
+
+        public int getContacted() {
+            return contacted;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+    }
+
+    private static final class RpcResponse {
+        private List<PeerInfo> providers;
+        private List<PeerInfo> contacts;
+    }
+
+    private static final class ProviderRecord {
+        private final String peerId;
+        private final InetAddress address;
+        private final int port;
+        private final InetAddress relay;
+        private final long expiresAt = System.currentTimeMillis() + RECORD_TTL_MS;
+
+        ProviderRecord(PeerInfo peer) {
+            this(peer.getId(), peer.getAddress(), peer.getCommandPort(), peer.getRelayAddress());
+        }
+
+        ProviderRecord(String peerId, InetAddress address, int port, InetAddress relay) {
+            this.peerId = peerId;
+            this.address = address;
+            this.port = port;
+            this.relay = relay;
+        }
+
+        PeerInfo toPeerInfo() {
+            return toPeerInfo(address);
+        }
+
+        PeerInfo toPeerInfo(InetAddress fallbackAddress) {
+            PeerInfo known = PeerManager.getInstance().getPeer(peerId);
+            if (known != null)
+                return known;
+            PeerInfo info = new PeerInfo(peerId, address != null ? address : fallbackAddress, port);
+            info.setRelayAddress(relay);
+            return info;
+        }
+    }
+}
@@ -4,32 +4,109 @@ import java.io.IOException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 
+import com.cse471.file.FileManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DiscoveryManager {
     private static final int DISCOVERY_PORT = 50000;
+    // Sequenced announcements with the catalog summary go to a second port, so
+    // peers that only speak the original layout never see them
+    private static final int EXTENSION_PORT = DISCOVERY_PORT + 1;
+    private static final byte EXTENSION_VERSION = 2;
     private static final int DISCOVERY_INTERVAL_MS = 5000;
     private static final int INITIAL_TTL = 0; // Hop limit (0 = No Forwarding, Single Subnet)
+    private static final byte FLAG_ANNOUNCE = 0x01;
+    private static final byte FLAG_CATALOG = 0x04; // (Extension) Payload carries the catalog version
+    private static final byte FLAG_FILTER = 0x08; // (Extension) Payload carries the catalog Bloom filter
+    private static final byte FLAG_EXTENDED = 0x10; // (v1) Sender also announces on EXTENSION_PORT
+    private static final int FILTER_REPEAT_ANNOUNCES = 3; // A changed filter is sent this many times (UDP loss)...
+    private static final int FILTER_REFRESH_ANNOUNCES = 6; // ...and then every 30 s for peers that joined later
+    private static final int SEEN_CACHE_SIZE = 4096; // (Origin, Seq) pairs remembered for duplicate suppression
+    private static final long INTERFACE_REFRESH_MS = 30_000;
+    // Forwarding budget per origin: an honest peer announces once per interval,
+    // so only an origin flooding new sequence numbers hits it. A global budget
+    // would drop honest forwards once enough peers announce.
+    private static final double MAX_FORWARDS_PER_ORIGIN_PER_SEC = 1.0;
+    private static final int FORWARD_BURST = 3;
+    private static final int MAX_FORWARD_ORIGINS = 1024; // Limiters kept for the most recently seen origins
+    private static final int LIVENESS_CHECK_MS = 2000;
 
     private final String myPeerId;
     private final int myTcpPort;
+    private final FileManager fileManager;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private Thread listenerThread;
+    private Thread extensionListenerThread;
     private Thread announcerThread;
+    private Thread livenessThread;
+    private DatagramSocket forwardSocket;
+
+    // Origin sequence: starts random so a restarted peer is not mistaken for
+    // duplicates of its previous run
+    private final AtomicInteger sequence = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+    private final Map<String, Boolean> seenPackets = Collections
+            .synchronizedMap(new LinkedHashMap<String, Boolean>(256, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > SEEN_CACHE_SIZE;
+                }
+            });
+    private final Map<String, TokenBucket> forwardLimiters = Collections
+            .synchronizedMap(new LinkedHashMap<String, TokenBucket>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                    return size() > MAX_FORWARD_ORIGINS;
+                }
+            });
+
+    // Cached interface list (refreshed periodically instead of per packet)
+    private volatile List<InterfaceAddress> broadcastInterfaces = Collections.emptyList();
+    private volatile Set<InetAddress> localAddresses = Collections.emptySet();
+    private volatile long interfacesRefreshedAt = 0;
 
-    // Yapıcı Metot: Peer ID ve TCP Port bilgisini alır.
-    public DiscoveryManager(String myPeerId, int myTcpPort) {
+    // Catalog Summary: rebuilt only when the catalog version changes
+    private int filterVersion = -1;
+    private byte[] filterBytes;
+    private int announcesSinceChange = 0;
+
+    // Yapıcı Metot: Peer ID, TCP Port bilgisini ve duyurulara katalog özeti
+    // eklemek için dosya yöneticisini alır.
+    public DiscoveryManager(String myPeerId, int myTcpPort, FileManager fileManager) {
         this.myPeerId = myPeerId;
         this.myTcpPort = myTcpPort;
+        this.fileManager = fileManager;
     }
 
     // Servisi Başlatır: Dinleyici ve Duyurucu thread'lerini oluşturup çalıştırır.
     public void start() {
         if (running.compareAndSet(false, true)) {
-            listenerThread = new Thread(this::listenLoop, "Discovery-Listener");
+            try {
+                forwardSocket = new DatagramSocket();
+                forwardSocket.setBroadcast(true);
+            } catch (SocketException e) {
+                e.printStackTrace();
+            }
+            listenerThread = new Thread(() -> listenLoop(DISCOVERY_PORT, 1024, false), "Discovery-Listener");
+            // Header + catalog filter (up to 1 KB) + ID
+            extensionListenerThread = new Thread(() -> listenLoop(EXTENSION_PORT, 2048, true),
+                    "Discovery-Extension");
             announcerThread = new Thread(this::announceLoop, "Discovery-Announcer");
+            livenessThread = new Thread(this::livenessLoop, "Discovery-Liveness");
+            livenessThread.setDaemon(true);
             listenerThread.start();
+            extensionListenerThread.start();
             announcerThread.start();
+            livenessThread.start();
             System.out.println("Discovery Manager started. ID: " + myPeerId + ", TCP: " + myTcpPort);
         }
     }
@@ -39,8 +116,14 @@ public class DiscoveryManager {
         running.set(false);
         if (listenerThread != null)
             listenerThread.interrupt();
+        if (extensionListenerThread != null)
+            extensionListenerThread.interrupt();
         if (announcerThread != null)
             announcerThread.interrupt();
+        if (livenessThread != null)
+            livenessThread.interrupt();
+        if (forwardSocket != null)
+            forwardSocket.close();
     }
 
     // Duyurucu Döngüsü: Her 5 saniyede bir "Ben Buradayım" mesajı yayınlar.
@@ -48,7 +131,8 @@ public class DiscoveryManager {
         try (DatagramSocket socket = new DatagramSocket()) {
             socket.setBroadcast(true);
             while (running.get()) {
-                sendDiscovery(socket, INITIAL_TTL);
+                refreshCatalogFilter();
+                sendDiscovery(socket, INITIAL_TTL, sequence.incrementAndGet());
                 Thread.sleep(DISCOVERY_INTERVAL_MS);
             }
         } catch (InterruptedException e) {
@@ -58,18 +142,31 @@ public class DiscoveryManager {
         }
     }
 
-    // Dinleyici Döngüsü: 50000 portunu dinler ve gelen paketleri işlenmek üzere
-    // processPacket'e yollar.
-    private void listenLoop() {
-        byte[] buffer = new byte[1024];
+    // Canlılık Döngüsü: Duyuruları kesilen peerları düzenli aralıklarla kontrol
+    // eder ve ölü kabul edilenleri listeden çıkarır.
+    private void livenessLoop() {
+        try {
+            while (running.get()) {
+                Thread.sleep(LIVENESS_CHECK_MS);
+                PeerManager.getInstance().expireDeadPeers();
+            }
+        } catch (InterruptedException e) {
+            // Stop gracefully
+        }
+    }
+
+    // Dinleyici Döngüsü: Verilen portu dinler ve gelen paketleri işlenmek üzere
+    // processPacket'e yollar (50000: v1 duyurular, 50001: uzantı duyuruları).
+    private void listenLoop(int port, int bufferSize, boolean extension) {
+        byte[] buffer = new byte[bufferSize];
         try (DatagramSocket socket = new DatagramSocket(null)) {
             socket.setReuseAddress(true);
-            socket.bind(new InetSocketAddress(DISCOVERY_PORT));
+            socket.bind(new InetSocketAddress(port));
 
             while (running.get()) {
                 DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
                 socket.receive(packet);
-                processPacket(packet, socket); // Pass socket to allow forwarding
+                processPacket(packet, extension);
             }
         } catch (IOException e) {
             if (running.get())
@@ -77,39 +174,101 @@ public class DiscoveryManager {
         }
     }
 
-    // Paketi İşler: Gelen paketin kimden geldiğini, Relay olup olmadığını anlar ve
-    // listeye ekler.
-    private void processPacket(DatagramPacket packet, DatagramSocket serverSocket) {
-        byte[] data = packet.getData();
-        int length = packet.getLength();
+    // Duyuru: Ayrıştırılmış bir keşif paketinin alanları.
+    static final class Announcement {
+        int flags;
+        int ttl;
+        int port;
+        InetAddress address;
+        Integer seq; // Extension only
+        Integer catalogVersion; // Extension only, when FLAG_CATALOG is set
+        BloomFilter filter; // Extension only, when FLAG_FILTER is set
+        String peerId;
+        int ttlOffset; // Where a forwarder decrements the TTL
+    }
 
+    // v1 Ayrıştır: [Flags (1)] [TTL (1)] [Port (2)] [IP (4)] [PeerID (Var)].
+    // Orijinal düzen; PeerID 8. bayttan paketin sonuna kadardır. Geçersizse null.
+    static Announcement parseV1(byte[] data, int length) {
         if (length < 8)
-            return;
-
-        // Parsing Protocol: [Flags (1)] [TTL (1)] [Port (2)] [IP (4)] [PeerID (Var)]
-        int ttl = data[1] & 0xFF;
-        int remotePort = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+            return null;
+        Announcement a = new Announcement();
+        a.flags = data[0] & 0xFF;
+        a.ttl = data[1] & 0xFF;
+        a.ttlOffset = 1;
+        a.port = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+        a.address = readAddress(data, 4);
+        if (a.address == null)
+            return null;
+        a.peerId = new String(data, 8, length - 8, StandardCharsets.UTF_8);
+        return a;
+    }
 
-        // Extract IP from payload (Bytes 4,5,6,7)
-        byte[] ipBytes = new byte[4];
-        System.arraycopy(data, 4, ipBytes, 0, 4);
+    // Uzantı Ayrıştır: [Version (1)] [Flags (1)] [TTL (1)] [Port (2)] [IP (4)]
+    // [Seq (4)] [Catalog Version (4)] [Filter Length (2)] [Filter (Var)]
+    // [PeerID (Var)]. Katalog alanları bayraklara göre isteğe bağlıdır.
+    static Announcement parseExtension(byte[] data, int length) {
+        if (length < 13 || data[0] != EXTENSION_VERSION)
+            return null;
+        Announcement a = new Announcement();
+        a.flags = data[1] & 0xFF;
+        a.ttl = data[2] & 0xFF;
+        a.ttlOffset = 2;
+        a.port = ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+        a.address = readAddress(data, 5);
+        if (a.address == null)
+            return null;
+        a.seq = readInt(data, 9);
+        int offset = 13;
+        if ((a.flags & FLAG_CATALOG) != 0) {
+            if (length < offset + 4)
+                return null;
+            a.catalogVersion = readInt(data, offset);
+            offset += 4;
+            if ((a.flags & FLAG_FILTER) != 0) {
+                if (length < offset + 2)
+                    return null;
+                int filterLength = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+                offset += 2;
+                if (length < offset + filterLength)
+                    return null;
+                a.filter = BloomFilter.fromBytes(data, offset, filterLength);
+                offset += filterLength;
+            }
+        }
+        a.peerId = new String(data, offset, length - offset, StandardCharsets.UTF_8);
+        return a;
+    }
 
-        InetAddress remoteAddress;
+    private static InetAddress readAddress(byte[] data, int offset) {
         try {
-            remoteAddress = InetAddress.getByAddress(ipBytes);
+            return InetAddress.getByAddress(java.util.Arrays.copyOfRange(data, offset, offset + 4));
         } catch (UnknownHostException e) {
-            return;
+            return null;
         }
+    }
 
-        String remoteId = new String(data, 8, length - 8, StandardCharsets.UTF_8);
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
+
+    // Paketi İşler: Gelen paketin kimden geldiğini, Relay olup olmadığını anlar ve
+    // listeye ekler. Uzantısı olan peerların v1 kopyası yalnızca yol bilgisi
+    // için kullanılır. Aynı (kaynak, sıra no) çifti daha önce görüldüyse paket
+    // tekrar işlenmez ve iletilmez.
+    private void processPacket(DatagramPacket packet, boolean extension) {
+        byte[] data = packet.getData();
+        int length = packet.getLength();
+        Announcement a = extension ? parseExtension(data, length) : parseV1(data, length);
+        if (a == null)
+            return;
+        String remoteId = a.peerId;
 
         // Ignore self
         if (remoteId.equals(myPeerId))
             return;
 
-        // Register Peer using the IP from payload (True Origin)
-        PeerInfo info = new PeerInfo(remoteId, remoteAddress, remotePort);
-
         // Ignore packets from self (by IP check)
         // This is critical to prevent "Self-Relay" detection where we receive our own
         // forwarded packet
@@ -117,96 +276,163 @@ public class DiscoveryManager {
             return;
 
         // Check for Relay: If Packet Sender != Payload Origin, then Sender is a Relay
-        if (!packet.getAddress().equals(remoteAddress)) {
-            info.setRelayAddress(packet.getAddress());
-        }
+        InetAddress relay = packet.getAddress().equals(a.address) ? null : packet.getAddress();
+
+        // Multi-Path: every copy of an announcement shows a path to its origin, so it
+        // is recorded before duplicates are dropped
+        PeerManager.getInstance().getRouteTable().recordPath(remoteId, relay);
+
+        // The sender's extension announcement carries the same peer; counting both
+        // would halve the heartbeat intervals the failure detector sees
+        if (!extension && (a.flags & FLAG_EXTENDED) != 0)
+            return;
+
+        // Duplicate Suppression: Same announcement received again (other interface
+        // or another relay's copy)
+        if (a.seq != null && seenPackets.putIfAbsent(remoteId + ":" + a.seq, Boolean.TRUE) != null)
+            return;
+
+        // Register Peer using the IP from payload (True Origin)
+        PeerInfo info = new PeerInfo(remoteId, a.address, a.port);
+        info.setRelayAddress(relay);
 
         if (PeerManager.getInstance().addPeer(info)) {
             System.out.println(
                     "Discovered Peer: " + info); // Use toString() to show relay info
         }
+        PeerManager.getInstance().heartbeat(remoteId); // Last-seen time for the failure detector
+        if (a.catalogVersion != null)
+            PeerManager.getInstance().updateCatalog(remoteId, a.catalogVersion, a.filter);
 
         // Forwarding Logic (Limited Scope Flooding)
-        if (ttl > 0) {
-            data[1] = (byte) (ttl - 1);
-            forwardPacket(data, length);
+        // Only sequenced packets are forwarded: without a sequence number duplicates
+        // cannot be detected and the flood would not terminate
+        if (a.ttl > 0 && a.seq != null) {
+            if (!allowForward(remoteId))
+                return; // Origin over its forwarding budget, drop instead of storming
+            data[a.ttlOffset] = (byte) (a.ttl - 1);
+            forwardPacket(data, length, EXTENSION_PORT);
         }
     }
 
-    // Keşif Paketi Gönder: Cihazın tüm ağ arayüzlerini (Wi-Fi, Ethernet) dolaşıp
-    // Broadcast yapar.
-    private void sendDiscovery(DatagramSocket socket, int ttl) {
+    // İletim İzni: Kaynağın (origin) iletim bütçesinden bir jeton harcar.
+    // Bütçe kaynak başınadır; tek bir peer'ın sel gibi duyurusu diğerlerinin
+    // iletimini engellemez.
+    boolean allowForward(String origin) {
+        return forwardLimiters
+                .computeIfAbsent(origin, k -> new TokenBucket(MAX_FORWARDS_PER_ORIGIN_PER_SEC, FORWARD_BURST))
+                .tryAcquire(1);
+    }
+
+    // Katalog Filtresini Yenile: Katalog sürümü değiştiyse filtreyi yeniden
+    // kurar. Filtre değişiklikten sonraki birkaç duyuruda ve ardından seyrek
+    // aralıklarla gönderilir; diğer duyurular yalnızca sürüm numarasını taşır.
+    private void refreshCatalogFilter() {
+        if (fileManager == null)
+            return;
+        int version = fileManager.getCatalogVersion();
+        if (version != filterVersion) {
+            filterBytes = BloomFilter.of(fileManager.getLocalHashes()).toBytes();
+            filterVersion = version;
+            announcesSinceChange = 0;
+        } else {
+            announcesSinceChange++;
+        }
+    }
+
+    private boolean shouldSendFilter() {
+        return filterBytes != null && (announcesSinceChange < FILTER_REPEAT_ANNOUNCES
+                || announcesSinceChange % FILTER_REFRESH_ANNOUNCES == 0);
+    }
+
+    // Arayüzleri Yenile: Broadcast adresi olan IPv4 arayüzlerini ve yerel IP'leri
+    // önbelleğe alır. Her pakette yeniden taranmaz, belirli aralıklarla yenilenir.
+    private void refreshInterfacesIfStale() {
+        long now = System.currentTimeMillis();
+        if (now - interfacesRefreshedAt < INTERFACE_REFRESH_MS)
+            return;
+        List<InterfaceAddress> broadcasts = new ArrayList<>();
+        Set<InetAddress> locals = new HashSet<>();
         try {
-            // Broadcast Logic: Iterate all interfaces and send specific IP for each
             java.util.Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
             while (interfaces.hasMoreElements()) {
                 NetworkInterface networkInterface = interfaces.nextElement();
+                for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                    locals.add(interfaceAddress.getAddress());
+                }
                 if (networkInterface.isLoopback() || !networkInterface.isUp())
                     continue;
 
                 for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
-                    InetAddress broadcast = interfaceAddress.getBroadcast();
-                    InetAddress localIp = interfaceAddress.getAddress();
-
-                    // Only send if we have a broadcast address and it's IPv4 (simplification)
-                    if (broadcast != null && localIp instanceof Inet4Address) {
-                        try {
-                            // Build payload SPECIFIC to this interface's IP
-                            byte[] payload = buildPayload(ttl, myTcpPort, localIp, myPeerId);
-
-                            DatagramPacket packet = new DatagramPacket(payload, payload.length, broadcast,
-                                    DISCOVERY_PORT);
-                            socket.send(packet);
-                        } catch (Exception ignored) {
-                            // Ignore send failures on specific interfaces
-                        }
+                    // Only keep if we have a broadcast address and it's IPv4 (simplification)
+                    if (interfaceAddress.getBroadcast() != null
+                            && interfaceAddress.getAddress() instanceof Inet4Address) {
+                        broadcasts.add(interfaceAddress);
                     }
                 }
             }
-        } catch (Exception e) {
+        } catch (SocketException e) {
             e.printStackTrace();
+            return;
         }
+        broadcastInterfaces = broadcasts;
+        localAddresses = locals;
+        interfacesRefreshedAt = now;
     }
 
-    // Paketi İlet (Forward): Eğer TTL süresi bitmediyse, paketi başkalarının da
-    // duyması için tekrar yayınlar.
-    private void forwardPacket(byte[] data, int length) {
-        try (DatagramSocket socket = new DatagramSocket()) {
-            socket.setBroadcast(true);
-
-            // Better Flooding: Iterate interfaces like sendDiscovery to ensure it crosses
-            // subnets
-            java.util.Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-            while (interfaces.hasMoreElements()) {
-                NetworkInterface networkInterface = interfaces.nextElement();
-                if (networkInterface.isLoopback() || !networkInterface.isUp())
-                    continue;
+    // Keşif Paketi Gönder: Cihazın tüm ağ arayüzlerini (Wi-Fi, Ethernet) dolaşıp
+    // Broadcast yapar. Her arayüze orijinal düzende bir v1 paketi ve sıra numarası
+    // ile katalog özetini taşıyan bir uzantı paketi gider.
+    private void sendDiscovery(DatagramSocket socket, int ttl, int seq) {
+        refreshInterfacesIfStale();
+        byte[] filter = shouldSendFilter() ? filterBytes : null;
+        // Broadcast Logic: Iterate all interfaces and send specific IP for each
+        for (InterfaceAddress interfaceAddress : broadcastInterfaces) {
+            try {
+                // Build payload SPECIFIC to this interface's IP
+                InetAddress ip = interfaceAddress.getAddress();
+                byte[] payload = buildPayload(ttl, myTcpPort, ip, myPeerId);
+                socket.send(new DatagramPacket(payload, payload.length, interfaceAddress.getBroadcast(),
+                        DISCOVERY_PORT));
+
+                byte[] extension = buildExtension(ttl, myTcpPort, ip, seq, filterVersion, filter, myPeerId);
+                socket.send(new DatagramPacket(extension, extension.length, interfaceAddress.getBroadcast(),
+                        EXTENSION_PORT));
+            } catch (Exception ignored) {
+                // Ignore send failures on specific interfaces
+            }
+        }
+    }
 
-                for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
-                    InetAddress broadcast = interfaceAddress.getBroadcast();
-                    if (broadcast != null) {
-                        try {
-                            DatagramPacket packet = new DatagramPacket(data, length, broadcast, DISCOVERY_PORT);
-                            socket.send(packet);
-                        } catch (Exception ignored) {
-                        }
-                    }
-                }
+    // Paketi İlet (Forward): Eğer TTL süresi bitmediyse, paketi başkalarının da
+    // duyması için tekrar yayınlar. Tek bir kalıcı soket ve önbellekteki arayüz
+    // listesi kullanılır.
+    private void forwardPacket(byte[] data, int length, int port) {
+        DatagramSocket socket = forwardSocket;
+        if (socket == null || socket.isClosed())
+            return;
+        refreshInterfacesIfStale();
+
+        // Better Flooding: Iterate interfaces like sendDiscovery to ensure it crosses
+        // subnets
+        for (InterfaceAddress interfaceAddress : broadcastInterfaces) {
+            try {
+                DatagramPacket packet = new DatagramPacket(data, length, interfaceAddress.getBroadcast(), port);
+                socket.send(packet);
+            } catch (Exception ignored) {
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 
     // Paket İçeriği Oluştur: Flags, TTL, Port, IP ve PeerID bilgilerini byte
-    // dizisine çevirir.
-    private byte[] buildPayload(int ttl, int port, InetAddress ip, String id) {
+    // dizisine çevirir (orijinal v1 düzeni, PeerID 8. bayttan başlar).
+    static byte[] buildPayload(int ttl, int port, InetAddress ip, String id) {
         byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
         byte[] ipBytes = ip.getAddress(); // 4 bytes for IPv4
 
         byte[] payload = new byte[8 + idBytes.length]; // 1+1+2+4 + ID
 
-        payload[0] = 0x01; // Flags
+        payload[0] = FLAG_ANNOUNCE | FLAG_EXTENDED; // Flags
         payload[1] = (byte) ttl;
         payload[2] = (byte) ((port >> 8) & 0xFF);
         payload[3] = (byte) (port & 0xFF);
@@ -216,15 +442,37 @@ public class DiscoveryManager {
         return payload;
     }
 
+    // Uzantı Paketi Oluştur: Sürüm, Flags, TTL, Port, IP, sıra numarası, katalog
+    // özeti ve PeerID. catalogVersion < 0 ise katalog alanları eklenmez; filter
+    // null ise yalnızca sürüm gönderilir.
+    static byte[] buildExtension(int ttl, int port, InetAddress ip, int seq, int catalogVersion, byte[] filter,
+            String id) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int catalogLength = catalogVersion < 0 ? 0 : 4 + (filter != null ? 2 + filter.length : 0);
+        java.nio.ByteBuffer payload = java.nio.ByteBuffer.allocate(13 + catalogLength + idBytes.length);
+
+        byte flags = FLAG_ANNOUNCE;
+        if (catalogVersion >= 0)
+            flags |= FLAG_CATALOG;
+        if (catalogVersion >= 0 && filter != null)
+            flags |= FLAG_FILTER;
+        payload.put(EXTENSION_VERSION).put(flags).put((byte) ttl).putShort((short) port);
+        payload.put(ip.getAddress(), 0, 4).putInt(seq);
+        if (catalogVersion >= 0) {
+            payload.putInt(catalogVersion);
+            if (filter != null)
+                payload.putShort((short) filter.length).put(filter);
+        }
+        payload.put(idBytes);
+        return payload.array();
+    }
+
     // Yerel Adres Kontrolü: Verilen IP adresinin bu cihaza ait olup olmadığını
-    // kontrol eder.
+    // önbellekteki yerel adres listesinden kontrol eder.
     private boolean isLocalAddress(InetAddress addr) {
         if (addr.isAnyLocalAddress() || addr.isLoopbackAddress())
             return true;
-        try {
-            return NetworkInterface.getByInetAddress(addr) != null;
-        } catch (SocketException e) {
-            return false;
-        }
+        refreshInterfacesIfStale();
+        return localAddresses.contains(addr);
     }
 }
@@ -0,0 +1,237 @@
+package com.cse471.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class GossipManager {
+    public static final byte PEER_EXCHANGE = 0x04; // TCP command
+    private static final int GOSSIP_INTERVAL_MS = 5000;
+    private static final int FANOUT = 2; // Partners contacted per round
+    private static final int SAMPLE_SIZE = 16; // Peers sent per exchange
+    private static final int SEED_EVERY_ROUNDS = 12; // Re-contact seeds once a minute even when connected
+    private static final int FRESH_MS = 15_000; // Entries older than this do not count as liveness evidence
+
+    private final String myPeerId;
+    private final int myTcpPort;
+    private final TransferManager transferManager;
+    private final List<Seed> seeds;
+    private ScheduledExecutorService scheduler;
+    private long round = 0;
+
+    // Yapıcı Metot: Peer kimliğini, TCP portunu ve bağlantı için kullanılacak
+    // transfer yöneticisini alır. Tohum adresleri -Dp2p.seeds veya P2P_SEEDS
+    // ortam değişkeninden okunur (ör. 10.0.1.5:6123,10.0.2.7:6456).
+    public GossipManager(String myPeerId, int myTcpPort, TransferManager transferManager) {
+        this.myPeerId = myPeerId;
+        this.myTcpPort = myTcpPort;
+        this.transferManager = transferManager;
+        this.seeds = parseSeeds(System.getProperty("p2p.seeds", System.getenv("P2P_SEEDS")));
+    }
+
+    // Servisi Başlatır: Belirli aralıklarla rastgele peerlarla liste değişimi
+    // yapar.
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Gossip");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::gossipRound, 1000, GOSSIP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        System.out.println("Gossip Manager started. Seeds: " + seeds.size());
+    }
+
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    // Dedikodu Turu: Rastgele seçilen birkaç canlı peer ile (gerekirse tohum
+    // adreslerle) karşılıklı peer listesi alışverişi yapar.
+    private void gossipRound() {
+        try {
+            round++;
+            List<PeerInfo> live = new ArrayList<>(PeerManager.getInstance().getPeersByHealth());
+            Collections.shuffle(live);
+            for (int i = 0; i < Math.min(FANOUT, live.size()); i++) {
+                PeerInfo partner = live.get(i);
+                try (Socket socket = transferManager.openPeerConnection(partner)) {
+                    exchange(socket, partner.getRelayAddress());
+                } catch (IOException e) {
+                    // Partner unreachable, the failure detector will catch up
+                }
+            }
+
+            // Bootstrap: Broadcast may be unavailable (routed networks)
+            if (live.isEmpty() || round % SEED_EVERY_ROUNDS == 0) {
+                for (Seed seed : seeds) {
+                    try (Socket socket = transferManager.connect(InetAddress.getByName(seed.host), seed.port)) {
+                        exchange(socket, null);
+                    } catch (IOException e) {
+                        // Seed down, try again next round
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // [İstemci] Değişim: Kendi örneğimizi gönderir, karşı tarafın örneğini
+    // alıp birleştirir (push-pull).
+    private void exchange(Socket socket, InetAddress partnerRelay) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeByte(PEER_EXCHANGE);
+        writeView(out, socket.getLocalAddress(), null);
+        out.flush();
+
+        readAndMerge(in, null, partnerRelay);
+    }
+
+    // [Sunucu] Değişim İsteği: Gönderenin örneğini birleştirir ve kendi
+    // örneğimizle cevap verir.
+    public void handleExchange(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        String senderId = readAndMerge(in, socket.getInetAddress(), null);
+        writeView(out, socket.getLocalAddress(), senderId);
+        out.flush();
+    }
+
+    // Görünüm Yaz: [Kendi ID][Kendi IP][Kendi Port] ardından örneklenen peerlar:
+    // [ID][IP][Port][Relay var mı][Relay IP][Son görülme (ms)]
+    private void writeView(DataOutputStream out, InetAddress myAddress, String excludeId) throws IOException {
+        out.writeUTF(myPeerId);
+        out.write(myAddress.getAddress().length == 4 ? myAddress.getAddress() : new byte[4]);
+        out.writeInt(myTcpPort);
+
+        PeerManager peerManager = PeerManager.getInstance();
+        List<PeerInfo> sample = new ArrayList<>(peerManager.getPeersByHealth());
+        sample.removeIf(p -> p.getId().equals(excludeId) || p.getAddress().getAddress().length != 4);
+        Collections.shuffle(sample, ThreadLocalRandom.current());
+        if (sample.size() > SAMPLE_SIZE)
+            sample = sample.subList(0, SAMPLE_SIZE);
+
+        out.writeInt(sample.size());
+        for (PeerInfo peer : sample) {
+            out.writeUTF(peer.getId());
+            out.write(peer.getAddress().getAddress());
+            out.writeInt(peer.getCommandPort());
+            InetAddress relay = peer.getRelayAddress();
+            out.writeByte(relay != null ? 1 : 0);
+            if (relay != null)
+                out.write(relay.getAddress());
+            out.writeInt((int) Math.min(Integer.MAX_VALUE, peerManager.getMillisSinceLastSeen(peer.getId())));
+        }
+    }
+
+    // Görünüm Oku ve Birleştir: Gönderen peer'ı ve taze kayıtları PeerManager'a
+    // ekler. Gönderenin doğrudan ulaştığı peerlara gönderen üzerinden (Relay
+    // olarak) ulaşılır; daha sonra doğrudan bir duyuru gelirse yol güncellenir.
+    private String readAndMerge(DataInputStream in, InetAddress socketAddress, InetAddress senderRelay)
+            throws IOException {
+        PeerManager peerManager = PeerManager.getInstance();
+
+        String senderId = in.readUTF();
+        byte[] senderIp = new byte[4];
+        in.readFully(senderIp);
+        int senderPort = in.readInt();
+        InetAddress senderAddress = InetAddress.getByAddress(senderIp);
+
+        // Server side: if the connection came from another address, it was bridged
+        // by a relay
+        if (socketAddress != null && !socketAddress.equals(senderAddress))
+            senderRelay = socketAddress;
+
+        boolean senderIsMe = senderId.equals(myPeerId);
+        if (!senderIsMe) {
+            PeerInfo sender = new PeerInfo(senderId, senderAddress, senderPort);
+            sender.setRelayAddress(senderRelay);
+            peerManager.addPeer(sender);
+            peerManager.heartbeat(senderId);
+        }
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            byte[] ip = new byte[4];
+            in.readFully(ip);
+            int port = in.readInt();
+            InetAddress relay = null;
+            if (in.readByte() != 0) {
+                byte[] relayIp = new byte[4];
+                in.readFully(relayIp);
+                relay = InetAddress.getByAddress(relayIp);
+            }
+            int ageMs = in.readInt();
+
+            if (senderIsMe || id.equals(myPeerId) || ageMs > FRESH_MS)
+                continue;
+
+            if (peerManager.getPeer(id) == null) {
+                // Route: through the sender if it reaches the peer directly, or
+                // through the sender's relay if we reach that relay directly
+                InetAddress route;
+                if (relay == null && senderRelay == null) {
+                    route = senderAddress;
+                } else if (relay != null && isDirectPeer(relay)) {
+                    route = relay;
+                } else {
+                    continue; // Would need more than one relay hop
+                }
+                PeerInfo learned = new PeerInfo(id, InetAddress.getByAddress(ip), port);
+                learned.setRelayAddress(route);
+                // Dated sighting first, so the new peer's history starts at the
+                // original sighting rather than now
+                peerManager.heartbeat(id, ageMs);
+                if (peerManager.addPeer(learned))
+                    System.out.println("Gossip: learned peer " + learned + " from " + senderId);
+            }
+            // Dated heartbeat: relayed evidence never becomes fresher than the original
+            // sighting, so gossip cannot keep a dead peer alive in a loop
+            peerManager.heartbeat(id, ageMs);
+        }
+        return senderId;
+    }
+
+    private boolean isDirectPeer(InetAddress address) {
+        PeerInfo peer = PeerManager.getInstance().getPeerByIp(address);
+        return peer != null && peer.getRelayAddress() == null;
+    }
+
+    private static List<Seed> parseSeeds(String value) {
+        List<Seed> result = new ArrayList<>();
+        if (value == null || value.trim().isEmpty())
+            return result;
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2)
+                continue;
+            try {
+                result.add(new Seed(parts[0], Integer.parseInt(parts[1])));
+            } catch (NumberFormatException e) {
+                System.err.println("Gossip: ignoring invalid seed '" + entry + "'");
+            }
+        }
+        return result;
+    }
+
+    // Seed addresses are resolved on every use, so DNS changes are picked up
+    private static final class Seed {
+        private final String host;
+        private final int port;
+
+        Seed(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+    }
+}
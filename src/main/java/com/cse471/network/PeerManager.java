@@ -1,11 +1,41 @@
 package com.cse471.network;
 
+import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class PeerManager {
+    private static final long ANNOUNCE_INTERVAL_MS = 5000; // Matches DiscoveryManager's interval
+    private static final double SUSPECT_PHI = 8.0; // Excluded from searches and downloads
+    private static final double DEAD_PHI = 16.0; // Evicted...
+    private static final long MIN_DEAD_SILENCE_MS = 30_000; // ...but never before 30 s of silence
+    private static final long HEALTH_VIEW_TTL_MS = 1000; // Health scores change with time, re-sort at most once a second
     private static final PeerManager instance = new PeerManager();
     private final ConcurrentHashMap<String, PeerInfo> peers = new ConcurrentHashMap<>();
+    private final PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector(ANNOUNCE_INTERVAL_MS);
+
+    // Secondary Indexes (updated together with 'peers' under the write lock)
+    private final ConcurrentHashMap<InetAddress, PeerInfo> peersByAddress = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Set<String>> peerIdsByAddress = new HashMap<>(); // Every peer ID on one IP
+
+    // Every known path (direct, via each relay) per peer, with measured quality
+    private final RouteTable routeTable = new RouteTable();
+
+    // Catalog Summaries from discovery announcements (Peer ID -> Version + Bloom filter)
+    private final ConcurrentHashMap<String, CatalogSummary> catalogs = new ConcurrentHashMap<>();
+
+    // Cached View (rebuilt lazily after a change)
+    private volatile List<PeerInfo> healthView;
+    private volatile long healthViewBuiltAt = 0;
 
     private PeerManager() {
     }
@@ -16,8 +46,9 @@ public class PeerManager {
     }
 
     // Peer Ekle: Yeni bir Peer keşfedildiğinde listeye ekler. Doğrudan bağlantı
-    // varsa Relay olanı yoksayar.
-    public boolean addPeer(PeerInfo peer) {
+    // varsa Relay olanı yoksayar. Ana tablo ve indeksler birlikte güncellenir;
+    // bilgisi değişmeyen peerın tekrar duyurusu hiçbir şeyi değiştirmez (O(1)).
+    public synchronized boolean addPeer(PeerInfo peer) {
         PeerInfo existing = peers.get(peer.getId());
         if (existing != null) {
             // Priority Rule: Don't downgrade from Direct to Relayed
@@ -25,17 +56,129 @@ public class PeerManager {
                 // Ignore the update if it forces a relay when we have direct
                 return false;
             }
+            // Periodic re-announcement, nothing changed: keep the indexes and views
+            if (existing.getAddress().equals(peer.getAddress()) && existing.getCommandPort() == peer.getCommandPort()
+                    && Objects.equals(existing.getRelayAddress(), peer.getRelayAddress()))
+                return false;
         }
         PeerInfo previous = peers.put(peer.getId(), peer);
+        if (previous != null)
+            unindex(previous);
+        else
+            failureDetector.track(peer.getId()); // Expires even if it never announces itself to us
+        index(peer);
+        invalidateViews();
         return previous == null;
     }
 
     // Peer Sil: Bağlantısı kopan veya kapanan Peer'ı listeden çıkarır.
-    public void removePeer(String peerId) {
-        peers.remove(peerId);
+    public synchronized void removePeer(String peerId) {
+        PeerInfo removed = peers.remove(peerId);
+        failureDetector.remove(peerId);
+        catalogs.remove(peerId);
+        routeTable.remove(peerId);
+        if (removed != null) {
+            unindex(removed);
+            invalidateViews();
+        }
         System.out.println("Peer Removed: " + peerId);
     }
 
+    private void index(PeerInfo peer) {
+        peerIdsByAddress.computeIfAbsent(peer.getAddress(), k -> new HashSet<>()).add(peer.getId());
+        // Several peers may share one IP; a direct one is preferred for relay lookups
+        PeerInfo current = peersByAddress.get(peer.getAddress());
+        if (current == null || current.getRelayAddress() != null || current.getId().equals(peer.getId()))
+            peersByAddress.put(peer.getAddress(), peer);
+    }
+
+    // İndeksten Çıkar: Yalnızca aynı IP'deki peerlara bakılır, tüm tablo
+    // taranmaz.
+    private void unindex(PeerInfo peer) {
+        Set<String> ids = peerIdsByAddress.get(peer.getAddress());
+        if (ids != null) {
+            ids.remove(peer.getId());
+            if (ids.isEmpty())
+                peerIdsByAddress.remove(peer.getAddress());
+        }
+        if (peersByAddress.remove(peer.getAddress(), peer) && ids != null) {
+            // Fall back to another peer on the same IP, a direct one if there is one
+            for (String otherId : ids) {
+                PeerInfo other = peers.get(otherId);
+                if (other != null)
+                    index(other);
+            }
+        }
+    }
+
+    private void invalidateViews() {
+        healthView = null;
+    }
+
+    // Kalp Atışı: Peer'dan duyuru alındığını hata dedektörüne bildirir.
+    public void heartbeat(String peerId) {
+        failureDetector.heartbeat(peerId);
+    }
+
+    // Dolaylı Kalp Atışı: Başka bir peer'ın ageMs önce gördüğünü bildirdiği
+    // peer için kalp atışı kaydeder.
+    public void heartbeat(String peerId, long ageMs) {
+        failureDetector.heartbeat(peerId, System.currentTimeMillis() - ageMs);
+    }
+
+    // Son Görülme: Peer'dan en son ne kadar süre önce haber alındığı (ms).
+    public long getMillisSinceLastSeen(String peerId) {
+        return failureDetector.millisSinceLastHeartbeat(peerId);
+    }
+
+    // Şüpheli mi: Peer'ın duyuruları beklenenden uzun süredir gelmiyorsa true.
+    public boolean isSuspected(String peerId) {
+        return failureDetector.phi(peerId) >= SUSPECT_PHI;
+    }
+
+    // Ölü Peerları Temizle: Phi eşiğini aşan peerları listeden çıkarır.
+    public void expireDeadPeers() {
+        for (String peerId : new ArrayList<>(peers.keySet())) {
+            double phi = failureDetector.phi(peerId);
+            if (phi >= DEAD_PHI && failureDetector.millisSinceLastHeartbeat(peerId) >= MIN_DEAD_SILENCE_MS) {
+                System.out.println("Peer " + peerId + " considered dead (phi=" + String.format("%.1f", phi)
+                        + ", silent for " + failureDetector.millisSinceLastHeartbeat(peerId) + " ms)");
+                removePeer(peerId);
+            }
+        }
+    }
+
+    // Katalog Güncelle: Duyurudan gelen katalog sürümünü ve (varsa) filtresini
+    // kaydeder. Filtresiz yeni bir sürüm gelirse eldeki filtre eskimiş sayılır
+    // ve bir sonraki filtreli duyuruya kadar peer budanmaz.
+    public void updateCatalog(String peerId, int version, BloomFilter filter) {
+        if (filter != null) {
+            catalogs.put(peerId, new CatalogSummary(version, filter));
+            return;
+        }
+        CatalogSummary current = catalogs.get(peerId);
+        if (current == null || current.version != version)
+            catalogs.put(peerId, new CatalogSummary(version, null));
+    }
+
+    // Sahip Olabilir mi: Peer'ın güncel filtresi hash'i içermiyorsa false.
+    // Filtre bilinmiyorsa veya eskimişse temkinli davranılıp true döner.
+    public boolean mightHave(String peerId, String hash) {
+        CatalogSummary summary = catalogs.get(peerId);
+        return summary == null || summary.filter == null || summary.filter.mightContain(hash);
+    }
+
+    // Boş Katalog: Peer güncel filtresinde hiç içerik bildirmediyse true (arama
+    // isteği gönderilmez).
+    public boolean hasEmptyCatalog(String peerId) {
+        CatalogSummary summary = catalogs.get(peerId);
+        return summary != null && summary.filter != null && summary.filter.isEmpty();
+    }
+
+    public RouteTable getRouteTable() {
+        return routeTable;
+    }
+
     // Peer Getir: ID'si verilen Peer'ın detaylarını döner.
     public PeerInfo getPeer(String peerId) {
         return peers.get(peerId);
@@ -46,13 +189,58 @@ public class PeerManager {
         return peers.values();
     }
 
-    // IP ile Bul: IP adresi bilinen bir Peer'ın ID ve Port bilgilerini bulur.
-    public PeerInfo getPeerByIp(java.net.InetAddress ip) {
-        for (PeerInfo peer : peers.values()) {
-            if (peer.getAddress().equals(ip)) {
-                return peer;
+    // IP ile Bul: IP adresi bilinen bir Peer'ın ID ve Port bilgilerini bulur
+    // (indeksten, sabit zamanda).
+    public PeerInfo getPeerByIp(InetAddress ip) {
+        return peersByAddress.get(ip);
+    }
+
+    // Sağlık Puanı: 0-100 arası; duyuruları düzenli gelen doğrudan peerlar en
+    // yüksek puanı alır, her Relay atlaması ve artan phi puanı düşürür.
+    private static double healthScore(PeerInfo peer, double phi) {
+        double score = 100.0 - phi * 5.0;
+        if (peer.getRelayAddress() != null)
+            score -= 20.0;
+        return Math.max(0.0, Math.min(100.0, score));
+    }
+
+    // Canlı Peerlar (Sağlığa Göre): Şüpheli olmayan peerları sağlık puanına
+    // göre (en iyi önce) döner. Arama ve indirmelerde ölü peerlara bağlanılmaya
+    // çalışılmaz. Liste üyelik değişince ve en fazla saniyede bir yeniden
+    // kurulur; çağıranlar her seferinde phi hesaplamaz.
+    public List<PeerInfo> getPeersByHealth() {
+        List<PeerInfo> view = healthView;
+        long now = System.currentTimeMillis();
+        if (view == null || now - healthViewBuiltAt > HEALTH_VIEW_TTL_MS) {
+            synchronized (this) {
+                view = healthView;
+                if (view != null && now - healthViewBuiltAt <= HEALTH_VIEW_TTL_MS)
+                    return view; // Another caller rebuilt it meanwhile
+                List<PeerInfo> built = new ArrayList<>(peers.size());
+                Map<PeerInfo, Double> scores = new HashMap<>();
+                for (PeerInfo peer : peers.values()) {
+                    double phi = failureDetector.phi(peer.getId());
+                    if (phi >= SUSPECT_PHI)
+                        continue;
+                    built.add(peer);
+                    scores.put(peer, healthScore(peer, phi));
+                }
+                built.sort(Comparator.comparingDouble((PeerInfo p) -> scores.get(p)).reversed());
+                view = Collections.unmodifiableList(built);
+                healthView = view;
+                healthViewBuiltAt = now;
             }
         }
-        return null;
+        return view;
+    }
+
+    private static final class CatalogSummary {
+        private final int version;
+        private final BloomFilter filter; // null = version changed, filter not received yet
+
+        CatalogSummary(int version, BloomFilter filter) {
+            this.version = version;
+            this.filter = filter;
+        }
     }
 }
@@ -0,0 +1,119 @@
+package com.cse471.network;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PhiAccrualFailureDetector {
+    private static final int MAX_SAMPLES = 100;
+    private static final double MIN_STD_DEV_MS = 2000; // UDP broadcasts get lost, do not trust a too regular history
+    private static final long ACCEPTABLE_PAUSE_MS = 3000; // Added to the mean to tolerate jitter
+
+    private final long expectedIntervalMs;
+    private final ConcurrentHashMap<String, HeartbeatHistory> histories = new ConcurrentHashMap<>();
+
+    // Yapıcı Metot: Beklenen duyuru aralığını (ilk tahmin) belirler.
+    public PhiAccrualFailureDetector(long expectedIntervalMs) {
+        this.expectedIntervalMs = expectedIntervalMs;
+    }
+
+    // Kalp Atışı: Peer'dan duyuru geldiğini kaydeder ve aradaki süreyi geçmişe
+    // ekler.
+    public void heartbeat(String peerId) {
+        heartbeat(peerId, System.currentTimeMillis());
+    }
+
+    // Tarihli Kalp Atışı: Başka bir peer'ın aktardığı (dolaylı) bir görülmeyi
+    // kaydeder. Bilinen son görülmeden eskiyse yoksayılır.
+    public void heartbeat(String peerId, long timestampMs) {
+        histories.computeIfAbsent(peerId, k -> new HeartbeatHistory(expectedIntervalMs)).record(timestampMs);
+    }
+
+    // İlk Görülme: Geçmişi olmayan peer için şu anı ilk kalp atışı sayar.
+    // Dedikodu veya Relay ile öğrenilip hiç doğrudan duyuru göndermeyen peer da
+    // böylece zamanla şüpheli olur ve silinir. Geçmişi varsa bir şey yapmaz.
+    public void track(String peerId) {
+        long now = System.currentTimeMillis();
+        histories.computeIfAbsent(peerId, k -> {
+            HeartbeatHistory history = new HeartbeatHistory(expectedIntervalMs);
+            history.record(now);
+            return history;
+        });
+    }
+
+    // Phi Değeri: Son duyurudan bu yana geçen süreye göre peer'ın ölmüş olma
+    // şüphesini döner. Phi = 1 -> %10, 2 -> %1, 3 -> %0.1 yanılma olasılığı.
+    public double phi(String peerId) {
+        return phi(peerId, System.currentTimeMillis());
+    }
+
+    double phi(String peerId, long nowMs) {
+        HeartbeatHistory history = histories.get(peerId);
+        if (history == null)
+            return 0.0; // Not tracked (not a known peer)
+        return history.phi(nowMs);
+    }
+
+    public long millisSinceLastHeartbeat(String peerId) {
+        HeartbeatHistory history = histories.get(peerId);
+        return history == null ? 0 : System.currentTimeMillis() - history.getLastHeartbeat();
+    }
+
+    public void remove(String peerId) {
+        histories.remove(peerId);
+    }
+
+    private static final class HeartbeatHistory {
+        private final ArrayDeque<Long> intervals = new ArrayDeque<>();
+        private long lastHeartbeat = -1;
+        private double sum = 0;
+        private double squaredSum = 0;
+
+        HeartbeatHistory(long expectedIntervalMs) {
+            // Bootstrap with the expected interval so the first minutes are not
+            // judged on a single sample
+            addInterval(expectedIntervalMs);
+            addInterval(expectedIntervalMs + (long) MIN_STD_DEV_MS);
+        }
+
+        synchronized void record(long now) {
+            if (now <= lastHeartbeat)
+                return;
+            if (lastHeartbeat >= 0)
+                addInterval(now - lastHeartbeat);
+            lastHeartbeat = now;
+        }
+
+        private void addInterval(long interval) {
+            if (intervals.size() >= MAX_SAMPLES) {
+                long removed = intervals.removeFirst();
+                sum -= removed;
+                squaredSum -= (double) removed * removed;
+            }
+            intervals.addLast(interval);
+            sum += interval;
+            squaredSum += (double) interval * interval;
+        }
+
+        synchronized long getLastHeartbeat() {
+            return lastHeartbeat;
+        }
+
+        // Normal dağılım varsayımıyla (lojistik yaklaşım) geçen sürenin bu kadar
+        // uzun olma olasılığının -log10'u.
+        synchronized double phi(long now) {
+            if (lastHeartbeat < 0)
+                return 0.0;
+            int n = intervals.size();
+            double mean = sum / n + ACCEPTABLE_PAUSE_MS;
+            double variance = Math.max(0, squaredSum / n - (sum / n) * (sum / n));
+            double stdDev = Math.max(MIN_STD_DEV_MS, Math.sqrt(variance));
+
+            double elapsed = now - lastHeartbeat;
+            double y = (elapsed - mean) / stdDev;
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (elapsed > mean)
+                return -Math.log10(e / (1.0 + e));
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.cse471.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Framed binary protocol, negotiated with a HELLO command byte in place of the
+// v1 commands. Peers that do not know HELLO close the connection, and the
+// client falls back to v1 for them.
+//
+// Handshake: Client -> [0x10][Magic (4)][Version (1)], Server -> [Magic (4)][Version (1)]
+// Frame:     [Length (4) = bytes after this field][Type (1)][Request ID (4)][Payload]
+final class ProtocolV2 {
+    static final byte HELLO = 0x10; // Command byte, shares the v1 command space
+    static final int MAGIC = 0x50325032; // "P2P2"
+    static final byte VERSION = 2;
+    static final int HEADER_BYTES = 5; // Type + Request ID
+    static final int MAX_FRAME_BYTES = 1024 * 1024;
+
+    // Frame Types: requests, responses have the high bit set
+    static final byte GET_FILE_LIST = 0x01; // Payload: empty
+    static final byte GET_CHUNK = 0x02; // Payload: [Content ID (32)][Chunk Index (4)]
+    static final byte GET_MANIFEST = 0x03; // Payload: [Content ID (32)]
+    static final byte GET_CHUNK_BY_ID = 0x04; // Payload: [Chunk ID (32)], any local file containing it
+    static final byte GET_REPAIR = 0x05; // Payload: [Content ID (32)][First Chunk (4)][Group Size (4)][Parity Index (4)]
+    static final byte FILE_LIST = (byte) 0x81; // Payload: [Count (4)] + [Name (UTF)][Size (8)][Content ID (32)]
+    static final byte CHUNK = (byte) 0x82; // Payload: chunk bytes (or a repair block)
+    static final byte MANIFEST = (byte) 0x83; // Payload: [Count (4)] + [Chunk ID (32)]...
+    static final byte ERROR = (byte) 0xFF; // Payload: [Error Code (1)]
+
+    // Error Codes
+    static final byte ERR_NOT_FOUND = 1; // Unknown content or chunk
+    static final byte ERR_BUSY = 2; // Choked, try another source
+    static final byte ERR_OVERLOADED = 3; // Admission control shed the request
+    static final byte ERR_BAD_REQUEST = 4; // Malformed or unknown frame
+    static final byte ERR_INTERNAL = 5; // Read error on the server
+
+    private ProtocolV2() {
+    }
+
+    // Çerçeve Başlığı Yaz: Uzunluk, tür ve istek numarasını yazar; ardından
+    // payloadLength bayt veri gelmelidir.
+    static void writeHeader(DataOutputStream out, byte type, int requestId, int payloadLength) throws IOException {
+        out.writeInt(HEADER_BYTES + payloadLength);
+        out.writeByte(type);
+        out.writeInt(requestId);
+    }
+
+    static void writeError(DataOutputStream out, int requestId, byte code) throws IOException {
+        writeHeader(out, ERROR, requestId, 1);
+        out.writeByte(code);
+    }
+
+    // Çerçeve Başlığı Oku: Bağlantı düzgün kapandıysa (çerçeve sınırında) null
+    // döner.
+    static FrameHeader readHeader(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (java.io.EOFException e) {
+            return null;
+        }
+        if (length < HEADER_BYTES || length > MAX_FRAME_BYTES)
+            throw new IOException("Invalid frame length: " + length);
+        byte type = in.readByte();
+        int requestId = in.readInt();
+        return new FrameHeader(type, requestId, length - HEADER_BYTES);
+    }
+
+    static final class FrameHeader {
+        final byte type;
+        final int requestId;
+        final int payloadLength;
+
+        FrameHeader(byte type, int requestId, int payloadLength) {
+            this.type = type;
+            this.requestId = requestId;
+            this.payloadLength = payloadLength;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.cse471.network;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RouteTable {
+    private static final long PATH_TTL_MS = 60_000; // A path not seen in announcements for this long is dropped
+    private static final long FAILURE_BACKOFF_MS = 30_000; // A route that failed to connect is tried last
+    private static final double SMOOTHING = 0.3; // EWMA weight of a new sample
+    private static final double UNMEASURED_DIRECT_MS = 20; // Assumed setup time before the first sample
+    private static final double UNMEASURED_RELAY_MS = 100;
+    private static final int REFERENCE_BYTES = 256 * 1024; // Route cost = setup time + time for one chunk
+
+    // Peer ID -> every known path to it (direct and via each relay)
+    private final Map<String, List<Route>> routes = new ConcurrentHashMap<>();
+
+    public static final class Route {
+        private final InetAddress relay; // null = direct
+        private volatile long lastSeen = System.currentTimeMillis();
+        private double setupMs = -1; // EWMA of connect (+ relay handshake) time, -1 = unmeasured
+        private double bytesPerSecond = -1; // EWMA of transfer rate, -1 = unmeasured
+        private long failedUntil = 0;
+
+        Route(InetAddress relay) {
+            this.relay = relay;
+        }
+
+        public InetAddress getRelay() {
+            return relay;
+        }
+
+        public boolean isDirect() {
+            return relay == null;
+        }
+
+        public synchronized double getSetupMs() {
+            return setupMs;
+        }
+
+        public synchronized double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        // Yol Maliyeti: Bir parçanın bu yoldan tahmini süresi (kurulum + aktarım).
+        // Ölçülmemiş yollar için doğrudan bağlantı Relay'den ucuz varsayılır.
+        synchronized double cost() {
+            double setup = setupMs >= 0 ? setupMs : relay == null ? UNMEASURED_DIRECT_MS : UNMEASURED_RELAY_MS;
+            double transfer = bytesPerSecond > 0 ? REFERENCE_BYTES * 1000.0 / bytesPerSecond : 0;
+            return setup + transfer;
+        }
+
+        synchronized boolean isFailed(long now) {
+            return failedUntil > now;
+        }
+
+        @Override
+        public String toString() {
+            String path = relay == null ? "direct" : "via " + relay.getHostAddress();
+            synchronized (this) {
+                return path + (setupMs >= 0 ? String.format(" %.0f ms", setupMs) : "")
+                        + (bytesPerSecond > 0 ? String.format(" %.0f KB/s", bytesPerSecond / 1024) : "");
+            }
+        }
+    }
+
+    // Yol Kaydet: Peer'ın duyurusu bu yoldan (relay == null ise doğrudan) geldi.
+    // Aynı duyurunun her kopyası ayrı bir yolu gösterir.
+    public void recordPath(String peerId, InetAddress relay) {
+        List<Route> list = routes.computeIfAbsent(peerId, k -> new ArrayList<>());
+        synchronized (list) {
+            for (Route route : list) {
+                if (Objects.equals(route.relay, relay)) {
+                    route.lastSeen = System.currentTimeMillis();
+                    return;
+                }
+            }
+            list.add(new Route(relay));
+        }
+    }
+
+    // Yollar: Peer'a bilinen yolları en iyiden kötüye sıralı döner. Yakın zamanda
+    // bağlanamayan yollar sona kalır, süresi dolan yollar atılır. Tablo peer'ı
+    // bilmiyorsa PeerInfo'daki tek yol kullanılır.
+    public List<Route> routesFor(PeerInfo peer) {
+        long now = System.currentTimeMillis();
+        if (!routes.containsKey(peer.getId()))
+            recordPath(peer.getId(), peer.getRelayAddress()); // Learned via gossip or DHT, not announced to us
+        List<Route> list = routes.get(peer.getId());
+        List<Route> result = new ArrayList<>();
+        if (list != null) {
+            synchronized (list) {
+                for (Iterator<Route> it = list.iterator(); it.hasNext() && list.size() > 1;) {
+                    if (now - it.next().lastSeen > PATH_TTL_MS)
+                        it.remove();
+                }
+                result.addAll(list);
+            }
+        }
+        // Costs are snapshotted, samples may arrive while sorting
+        Map<Route, Double> costs = new HashMap<>();
+        for (Route route : result)
+            costs.put(route, route.isFailed(now) ? Double.MAX_VALUE : route.cost());
+        result.sort(Comparator.comparingDouble(costs::get));
+        return result;
+    }
+
+    // Kurulum Süresi: Bağlantı (ve Relay el sıkışması) başarılı oldu; süresini
+    // yolun ortalamasına katar ve hata işaretini kaldırır.
+    public void recordSetup(Route route, long elapsedMs) {
+        synchronized (route) {
+            route.setupMs = route.setupMs < 0 ? elapsedMs : SMOOTHING * elapsedMs + (1 - SMOOTHING) * route.setupMs;
+            route.failedUntil = 0;
+        }
+    }
+
+    // Aktarım Hızı: Yol üzerinden elapsedMs içinde bytes kadar veri alındı.
+    public void recordTransfer(Route route, long bytes, long elapsedMs) {
+        if (bytes <= 0 || elapsedMs <= 0)
+            return;
+        double rate = bytes * 1000.0 / elapsedMs;
+        synchronized (route) {
+            route.bytesPerSecond = route.bytesPerSecond < 0 ? rate
+                    : SMOOTHING * rate + (1 - SMOOTHING) * route.bytesPerSecond;
+        }
+    }
+
+    public void recordFailure(Route route) {
+        synchronized (route) {
+            route.failedUntil = System.currentTimeMillis() + FAILURE_BACKOFF_MS;
+        }
+    }
+
+    public void remove(String peerId) {
+        routes.remove(peerId);
+    }
+
+    // Çok Yollu Peerlar: Birden fazla yolu bilinen peerlar (ölçüm turu için).
+    public List<String> getMultiPathPeers() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, List<Route>> entry : routes.entrySet()) {
+            synchronized (entry.getValue()) {
+                if (entry.getValue().size() > 1)
+                    result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+}
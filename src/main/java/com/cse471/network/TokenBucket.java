@@ -0,0 +1,68 @@
+package com.cse471.network;
+
+import java.util.function.LongSupplier;
+
+public class TokenBucket {
+    private final double ratePerSecond;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    // Yapıcı Metot: Saniyede eklenen jeton sayısını ve birikebilecek en fazla
+    // jetonu (burst) belirler. Kova dolu başlar.
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this(ratePerSecond, capacity, System::nanoTime);
+    }
+
+    // Testler için: Dolumu verilen saatle hesaplar.
+    TokenBucket(double ratePerSecond, double capacity, LongSupplier nanoClock) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    // Jeton Dene: Yeterli jeton varsa harcar ve true döner, yoksa beklemeden
+    // false döner.
+    public synchronized boolean tryAcquire(double amount) {
+        refill();
+        if (tokens >= amount) {
+            tokens -= amount;
+            return true;
+        }
+        return false;
+    }
+
+    // Jeton Bekle: Yeterli jeton birikene kadar bekler ve harcar. Kapasiteden
+    // büyük istekler kova dolduğunda borçlanarak geçer (jeton sayısı eksiye
+    // düşer, sonraki istekler borç ödenene kadar bekler).
+    public synchronized void acquire(double amount) throws InterruptedException {
+        double needed = Math.min(amount, capacity);
+        while (true) {
+            refill();
+            if (tokens >= needed) {
+                tokens -= amount;
+                return;
+            }
+            long waitMs = (long) Math.ceil((needed - tokens) * 1000.0 / ratePerSecond);
+            wait(Math.max(1, waitMs));
+        }
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerSecond / 1_000_000_000.0);
+        lastRefillNanos = now;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+}
@@ -1,26 +1,103 @@
 package com.cse471.network;
 
+import com.cse471.file.ChunkBufferPool;
+import com.cse471.file.ContentId;
 import com.cse471.file.FileInfo;
 import com.cse471.file.FileManager;
+import com.cse471.metrics.MetricsRegistry;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TransferManager {
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final int READ_TIMEOUT_MS = 10000;
+    private static final int CHUNK_BUSY = -1; // Chunk reply length: choked, try another source
+    private static final long BUSY_BACKOFF_MS = 5000; // A busy source is skipped this long
+    private static final int OVERLOADED = -2; // Sent instead of any reply when the server sheds load
+    private static final int SHED_READ_TIMEOUT_MS = 1000; // Wait for the command byte of a shed connection
+    private static final int MAX_RELAY_SESSIONS = 32; // Each session holds two threads for its lifetime
+    private static final long ROUTE_PROBE_INTERVAL_MS = 15_000; // Setup time of every path to multi-path peers
+    private static final long LEGACY_RECHECK_MS = 10 * 60_000; // v1-only peers are asked for v2 again after this
     private final FileManager fileManager;
     private final int port;
-    private final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newCachedThreadPool();
+    // Admission Control: short requests run on a bounded pool behind an adaptive
+    // concurrency limit; long-lived relay pipes get their own pool so they do
+    // not count against it
+    private final AdaptiveConcurrencyLimit admission = new AdaptiveConcurrencyLimit();
+    private final ThreadPoolExecutor executor = boundedPool("Transfer-Worker",
+            AdaptiveConcurrencyLimit.getMaxLimit(), new ArrayBlockingQueue<>(AdaptiveConcurrencyLimit.getMaxLimit()));
+    private final ThreadPoolExecutor relayExecutor = boundedPool("Transfer-Relay", MAX_RELAY_SESSIONS * 2,
+            new SynchronousQueue<>());
+    private final Semaphore relaySessions = new Semaphore(MAX_RELAY_SESSIONS);
+    // Shed connections are answered off the accept thread: the command byte has
+    // to be read first so the reply uses that command's framing
+    private final ThreadPoolExecutor shedExecutor = boundedPool("Transfer-Shed", 2,
+            new ArrayBlockingQueue<>(AdaptiveConcurrencyLimit.getMaxLimit()));
+    // What the current request cost the server: time spent waiting for upload
+    // bandwidth is kept out of the admission latency sample, and only local
+    // failures (not client mistakes or disconnects) count as errors
+    private static final ThreadLocal<RequestCost> requestCost = ThreadLocal.withInitial(RequestCost::new);
+
+    private static final class RequestCost {
+        long shapingWaitNanos;
+        boolean serverError;
+    }
     private Thread serverThread;
     private boolean running = false;
+    private volatile GossipManager gossipManager;
+    private volatile DhtNode dhtNode;
+    private final UploadScheduler uploadScheduler = new UploadScheduler();
+    private final ChokeManager chokeManager = new ChokeManager();
+    private java.util.concurrent.ScheduledExecutorService routeProber;
+    // Client side: sources that answered "busy", Peer ID -> skip until (ms)
+    private final java.util.concurrent.ConcurrentHashMap<String, Long> busyUntil = new java.util.concurrent.ConcurrentHashMap<>();
+    // Client side: peers that did not answer the v2 hello, Peer ID -> retry v2 after (ms)
+    private final java.util.concurrent.ConcurrentHashMap<String, Long> legacyUntil = new java.util.concurrent.ConcurrentHashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final MetricsRegistry.Counter bytesReceived = MetricsRegistry.getInstance().counter(
+            "p2p_bytes_received_total", "Chunk and repair payload bytes downloaded from peers");
+    private final MetricsRegistry.Counter bytesSent = MetricsRegistry.getInstance().counter(
+            "p2p_bytes_sent_total", "Chunk and repair payload bytes uploaded to peers");
 
     // Yapıcı Metot: Dosya yöneticisini ve hangi portta sunucu açılacağını belirler.
     public TransferManager(FileManager fileManager, int port) {
         this.fileManager = fileManager;
         this.port = port;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("p2p_active_connections", "Inbound requests being served", admission::getInFlight);
+        metrics.gauge("p2p_admission_limit", "Current adaptive concurrency limit", admission::getLimit);
+        metrics.counterFunction("p2p_admission_rejected_total", "Inbound connections shed by admission control",
+                admission::getRejected);
+        metrics.gauge("p2p_relay_sessions", "Relay sessions in use",
+                () -> MAX_RELAY_SESSIONS - relaySessions.availablePermits());
+    }
+
+    // Dedikodu Yöneticisi: Peer listesi değişim isteklerini (0x04) karşılayacak
+    // yöneticiyi bağlar.
+    public void setGossipManager(GossipManager gossipManager) {
+        this.gossipManager = gossipManager;
+    }
+
+    // DHT Düğümü: İçerik arama isteklerini (0x05) karşılayacak düğümü bağlar.
+    public void setDhtNode(DhtNode dhtNode) {
+        this.dhtNode = dhtNode;
     }
 
     // Sunucuyu Başlatır: Arka planda gelen TCP isteklerini dinlemeye başlar.
@@ -28,54 +105,228 @@ public class TransferManager {
         running = true;
         serverThread = new Thread(this::listenLoop, "Transfer-Server");
         serverThread.start();
+        uploadScheduler.start();
+        chokeManager.start();
+        routeProber = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Route-Prober");
+            t.setDaemon(true);
+            return t;
+        });
+        routeProber.scheduleWithFixedDelay(this::probeRoutes, ROUTE_PROBE_INTERVAL_MS, ROUTE_PROBE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
         System.out.println("Transfer Server listening on TCP port " + port);
     }
 
     // Sunucuyu Durdurur: Dinlemeyi keser ve tüm aktif işlemleri kapatır.
     public void stop() {
         running = false;
+        uploadScheduler.stop();
+        chokeManager.stop();
+        if (routeProber != null)
+            routeProber.shutdownNow();
         try {
             executor.shutdown();
+            relayExecutor.shutdown();
+            shedExecutor.shutdown();
         } catch (Exception e) {
         }
     }
 
+    private static ThreadPoolExecutor boundedPool(String name, int threads, BlockingQueue<Runnable> queue) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     // Dinleme Döngüsü: Sürekli olarak yeni bağlantı kabul eder (accept) ve işlenmek
     // üzere threade atar.
     private void listenLoop() {
         try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName("0.0.0.0"))) {
             while (running) {
                 Socket client = serverSocket.accept();
-                executor.submit(() -> handleClient(client));
+                try {
+                    client.setSoTimeout(READ_TIMEOUT_MS); // A silent client cannot hold a worker forever
+                } catch (IOException e) {
+                    closeQuietly(client);
+                    continue;
+                }
+                if (!admission.tryAcquire()) {
+                    shed(client);
+                    continue;
+                }
+                try {
+                    executor.execute(() -> serveAdmitted(client));
+                } catch (RejectedExecutionException e) {
+                    admission.release();
+                    admission.sample(0, true);
+                    shed(client);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Kabul Edilen İstek: Bağlantıyı işler ve bitince yerini bırakır. Süreler
+    // bağlantı başına değil, her istek için ayrı bildirilir (bkz. startRequest).
+    private void serveAdmitted(Socket client) {
+        try {
+            handleClient(client);
+        } finally {
+            admission.release();
+        }
+    }
+
+    // İstek Başlangıcı: Bant genişliği bekleme sayacını ve hata işaretini
+    // sıfırlar, başlangıç zamanını döner.
+    private static long startRequest() {
+        RequestCost cost = requestCost.get();
+        cost.shapingWaitNanos = 0;
+        cost.serverError = false;
+        return System.nanoTime();
+    }
+
+    // Sunucu Hatası: Geçerli isteğin yerel bir hata (disk okuma vb.) yüzünden
+    // cevaplanamadığını işaretler.
+    private static void markServerError() {
+        requestCost.get().serverError = true;
+    }
+
+    // İstek Sonu: İsteğin işlenme süresini, yükleme hız sınırında beklenen
+    // süre düşülerek eşzamanlılık sınırına bildirir. Hız sınırı yavaşlığı
+    // sunucunun aşırı yüklendiği anlamına gelmez. Yarıda kalan istek (istemci
+    // koptu, zaman aşımı, bilinmeyen komut) sunucunun yükü hakkında bilgi
+    // taşımadığından, yerel bir hata olmadıkça bildirilmez.
+    private void finishRequest(long startNanos, boolean completed) {
+        RequestCost cost = requestCost.get();
+        if (!completed && !cost.serverError)
+            return;
+        long serviceNanos = System.nanoTime() - startNanos - cost.shapingWaitNanos;
+        admission.sample(TimeUnit.NANOSECONDS.toMillis(Math.max(0, serviceNanos)), cost.serverError);
+    }
+
+    // Bağlantıyı Reddet: Ret cevabını ayrı havuza verir; o da doluysa komutu
+    // okumadan OVERLOADED yazılır. Cevapsız kapanan bağlantıyı istemci v1
+    // sunucu sanar.
+    private void shed(Socket client) {
+        try {
+            shedExecutor.execute(() -> rejectOverloaded(client, true));
+        } catch (RejectedExecutionException e) {
+            rejectOverloaded(client, false);
+        }
+    }
+
+    // Aşırı Yük Cevabı: Önce komut baytını okur, sonra reddi o komutun
+    // istemcisinin beklediği biçimde yazar: dosya listesi, chunk, DHT ve v2
+    // el sıkışması için OVERLOADED (-2), Relay için ret baytı (0xFF). Dedikodu
+    // değişiminin ret kodu yoktur; o bağlantı cevapsız kapatılır. Komut
+    // okunmadan (kabul thread'inde) çağrılırsa OVERLOADED yazılır; ilk baytı
+    // 0xFF olduğundan Relay istemcisi de bunu ret olarak okur.
+    private void rejectOverloaded(Socket client, boolean readCommand) {
+        try {
+            InputStream in = client.getInputStream();
+            int command = ProtocolV2.HELLO;
+            if (readCommand) {
+                client.setSoTimeout(SHED_READ_TIMEOUT_MS);
+                command = in.read();
+            }
+            DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            if (command == 0x01 || command == 0x02 || command == DhtNode.DHT_RPC || command == ProtocolV2.HELLO) {
+                out.writeInt(OVERLOADED); // Fits in the send buffer, never blocks the accept thread
+            } else if (command == 0x03) { // RELAY_REQUEST
+                out.writeByte(0xFF);
+            }
+            out.flush();
+            client.shutdownOutput();
+            in.skip(in.available()); // Unread request bytes would turn the close into a reset
+        } catch (IOException e) {
+            // Client already gone or never sent a command
+        } finally {
+            closeQuietly(client);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            if (!socket.isClosed())
+                socket.close();
+        } catch (IOException e) {
+        }
+    }
+
     // İstemci Yöneticisi: Gelen bağlantının ne istediğini (Dosya Listesi, Chunk,
-    // Relay) anlar ve yönlendirir.
+    // Relay, v2 oturumu) anlar ve yönlendirir. Relay oturumları ayrı havuza devredilir.
     private void handleClient(Socket socket) {
-        try (DataInputStream in = new DataInputStream(socket.getInputStream());
-                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+        boolean handedOff = false;
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
 
             byte command = in.readByte();
-            if (command == 0x01) { // GET_FILE_LIST
-                sendFileList(out);
-            } else if (command == 0x02) { // GET_CHUNK
-                handleChunkRequest(in, out);
-            } else if (command == 0x03) { // RELAY_REQUEST
-                handleRelayRequest(in, out);
+            if (command == 0x03) { // RELAY_REQUEST
+                handedOff = startRelaySession(socket, in, out);
+            } else if (command == ProtocolV2.HELLO) {
+                handleV2Session(socket, in);
+            } else {
+                long start = startRequest();
+                boolean served = false;
+                try {
+                    served = serveRequest(command, socket, in, out);
+                } finally {
+                    finishRequest(start, served);
+                }
             }
-
         } catch (IOException e) {
+            // Connection dropped
         } finally {
+            if (!handedOff)
+                closeQuietly(socket);
+        }
+    }
+
+    // Tek İstekli Komutlar: Dosya listesi, chunk, dedikodu ve DHT isteklerini
+    // işler. Komut tanınmıyorsa false döner.
+    private boolean serveRequest(byte command, Socket socket, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        if (command == 0x01) { // GET_FILE_LIST
+            sendFileList(out);
+        } else if (command == 0x02) { // GET_CHUNK
+            handleChunkRequest(in, out, socket.getInetAddress().getHostAddress());
+        } else if (command == GossipManager.PEER_EXCHANGE && gossipManager != null) {
+            gossipManager.handleExchange(socket, in, out);
+        } else if (command == DhtNode.DHT_RPC && dhtNode != null) {
+            dhtNode.handleRpc(socket, in, out);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    // Relay Oturumu Başlat: Oturum sayısı sınırın altındaysa oturumu Relay
+    // havuzunda başlatır (soketi o kapatır) ve true döner; değilse ret yazar.
+    private boolean startRelaySession(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        if (relaySessions.tryAcquire()) {
             try {
-                if (!socket.isClosed())
-                    socket.close();
-            } catch (IOException e) {
+                relayExecutor.execute(() -> {
+                    try {
+                        handleRelayRequest(in, out);
+                    } finally {
+                        relaySessions.release();
+                        closeQuietly(socket);
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                relaySessions.release();
             }
         }
+        out.writeByte(0xFF); // Relay Refused
+        out.flush();
+        return false;
     }
 
     // Relay (Köprü) İsteği: Bu sunucuyu aracı olarak kullanıp başka bir hedefle
@@ -94,8 +345,7 @@ public class TransferManager {
 
             // Connect to Target
             System.out.println("DEBUG: Connecting to target...");
-            targetSocket = new Socket(targetIp, targetPort);
-            targetSocket.setSoTimeout(10000); // 10s timeout
+            targetSocket = connect(targetIp, targetPort); // Connect and read timeouts
             System.out.println("DEBUG: Connected to target.");
 
             // Send OK to Client
@@ -105,24 +355,22 @@ public class TransferManager {
 
             // Bridge Connections
             Socket finalTargetSocket = targetSocket;
-            java.util.concurrent.Future<?> f1 = executor.submit(() -> {
+            java.util.concurrent.Future<?> f1 = relayExecutor.submit(() -> {
                 try {
                     copyStream(in, finalTargetSocket.getOutputStream());
                 } catch (IOException e) {
                     System.out.println("DEBUG: Relay Pipe 1 Error: " + e.getMessage());
                 }
             });
-            java.util.concurrent.Future<?> f2 = executor.submit(() -> {
-                try {
-                    copyStream(finalTargetSocket.getInputStream(), out);
-                } catch (IOException e) {
-                    System.out.println("DEBUG: Relay Pipe 2 Error: " + e.getMessage());
-                }
-            });
+            // Pipe 2 runs on the session thread
+            try {
+                copyStream(finalTargetSocket.getInputStream(), out);
+            } catch (IOException e) {
+                System.out.println("DEBUG: Relay Pipe 2 Error: " + e.getMessage());
+            }
 
             try {
                 f1.get();
-                f2.get();
             } catch (Exception e) {
                 // Interrupted or ExecutionException
             }
@@ -176,64 +424,389 @@ public class TransferManager {
 
     // Chunk (Parça) Gönder: İstenen dosyanın belirli bir parçasını okur ve karşı
     // tarafa gönderir.
-    private void handleChunkRequest(DataInputStream in, DataOutputStream out) throws IOException {
+    private void handleChunkRequest(DataInputStream in, DataOutputStream out, String requester) throws IOException {
         String hash = in.readUTF();
         int chunkIndex = in.readInt();
 
-        byte[] data;
+        // Upload Slots: choked peers get an immediate "busy" instead of queueing
+        if (!chokeManager.tryAdmit(requester)) {
+            out.writeInt(CHUNK_BUSY);
+            out.flush();
+            return;
+        }
+
+        ByteBuffer data = null;
         try {
-            data = fileManager.getChunk(hash, chunkIndex);
+            data = fileManager.getChunk(hash, chunkIndex, requester);
+        } catch (FileNotFoundException e) {
+            // Unknown file -> empty response
         } catch (Exception e) {
-            data = new byte[0];
+            markServerError(); // Read error -> empty response
         }
 
-        out.writeInt(data.length);
-        if (data.length > 0) {
-            out.write(data);
+        try {
+            int length = data != null ? data.remaining() : 0;
+            out.writeInt(length);
+            if (length > 0) {
+                writeShaped(out, data, requester);
+            }
+            out.flush();
+        } finally {
+            fileManager.getBufferPool().release(data);
         }
+    }
+
+    // v2 Oturumu: El sıkışmayı tamamlar, ardından istemci bağlantıyı kapatana
+    // kadar çerçeveleri sırayla işler. İstemci birden fazla isteği cevap
+    // beklemeden art arda gönderebilir (pipelining); her cevap isteğin
+    // numarasını taşır.
+    private void handleV2Session(Socket socket, DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        byte version = in.readByte();
+        if (magic != ProtocolV2.MAGIC || version < ProtocolV2.VERSION)
+            return; // Not a v2 client, drop it
+        String requester = socket.getInetAddress().getHostAddress();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                UploadScheduler.QUANTUM));
+        out.writeInt(ProtocolV2.MAGIC);
+        out.writeByte(ProtocolV2.VERSION);
         out.flush();
+
+        ProtocolV2.FrameHeader frame;
+        while ((frame = ProtocolV2.readHeader(in)) != null) {
+            long start = startRequest();
+            boolean served = false;
+            try {
+                served = serveFrame(frame, in, out, requester);
+                out.flush();
+            } finally {
+                finishRequest(start, served);
+            }
+        }
+    }
+
+    // v2 İsteği: Tek bir çerçeveyi türüne göre cevaplar ve işlenen istek için
+    // true döner. Bilinmeyen veya boyu tutmayan çerçeveye BAD_REQUEST döner.
+    // Oturum açıkken eşzamanlılık sınırı düştüyse parça ve onarım istekleri
+    // okunmadan OVERLOADED ile geri çevrilir; bu cevaplar süre ölçümüne
+    // katılmaz.
+    private boolean serveFrame(ProtocolV2.FrameHeader frame, DataInputStream in, DataOutputStream out,
+            String requester) throws IOException {
+        boolean transfer = frame.type == ProtocolV2.GET_CHUNK || frame.type == ProtocolV2.GET_CHUNK_BY_ID
+                || frame.type == ProtocolV2.GET_REPAIR;
+        if (transfer && admission.isOverLimit()) {
+            in.skipNBytes(frame.payloadLength);
+            ProtocolV2.writeError(out, frame.requestId, ProtocolV2.ERR_OVERLOADED);
+            return false;
+        }
+        if (frame.type == ProtocolV2.GET_CHUNK && frame.payloadLength == ContentId.BYTES + 4) {
+            ContentId contentId = ContentId.read(in);
+            int chunkIndex = in.readInt();
+            sendChunkFrame(out, frame.requestId, contentId.toHex(), chunkIndex, null, requester);
+        } else if (frame.type == ProtocolV2.GET_CHUNK_BY_ID && frame.payloadLength == ContentId.BYTES) {
+            sendChunkFrame(out, frame.requestId, null, -1, ContentId.read(in), requester);
+        } else if (frame.type == ProtocolV2.GET_REPAIR && frame.payloadLength == ContentId.BYTES + 12) {
+            ContentId contentId = ContentId.read(in);
+            sendRepairFrame(out, frame.requestId, contentId.toHex(), in.readInt(), in.readInt(), in.readInt(),
+                    requester);
+        } else if (frame.type == ProtocolV2.GET_MANIFEST && frame.payloadLength == ContentId.BYTES) {
+            sendManifestFrame(out, frame.requestId, ContentId.read(in));
+        } else if (frame.type == ProtocolV2.GET_FILE_LIST) {
+            in.skipNBytes(frame.payloadLength);
+            sendFileListFrame(out, frame.requestId);
+        } else {
+            in.skipNBytes(frame.payloadLength);
+            ProtocolV2.writeError(out, frame.requestId, ProtocolV2.ERR_BAD_REQUEST);
+            return false;
+        }
+        return true;
+    }
+
+    // v2 Chunk Cevabı: Tıkalı peer'a BUSY, bilinmeyen parçaya NOT_FOUND hata
+    // çerçevesi; aksi halde parçayı CHUNK çerçevesi olarak hız sınırlı gönderir.
+    // chunkId verilirse parça, onu içeren herhangi bir yerel dosyadan okunur.
+    private void sendChunkFrame(DataOutputStream out, int requestId, String hash, int chunkIndex, ContentId chunkId,
+            String requester) throws IOException {
+        if (!chokeManager.tryAdmit(requester)) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_BUSY);
+            return;
+        }
+
+        ByteBuffer data;
+        try {
+            data = chunkId != null ? fileManager.getChunkById(chunkId, requester)
+                    : fileManager.getChunk(hash, chunkIndex, requester);
+        } catch (FileNotFoundException e) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_NOT_FOUND);
+            return;
+        } catch (Exception e) {
+            markServerError();
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_INTERNAL);
+            return;
+        }
+
+        try {
+            if (!data.hasRemaining()) {
+                ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_NOT_FOUND); // Past the end of the file
+                return;
+            }
+            ProtocolV2.writeHeader(out, ProtocolV2.CHUNK, requestId, data.remaining());
+            writeShaped(out, data, requester);
+        } finally {
+            fileManager.getBufferPool().release(data);
+        }
+    }
+
+    // v2 Onarım Bloğu: Grubun istenen Reed-Solomon onarım bloğunu hesaplayıp
+    // CHUNK çerçevesi olarak gönderir. Tıkalı peer'a BUSY döner.
+    private void sendRepairFrame(DataOutputStream out, int requestId, String hash, int firstChunk, int groupSize,
+            int parityIndex, String requester) throws IOException {
+        if (!chokeManager.tryAdmit(requester)) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_BUSY);
+            return;
+        }
+        byte[] block;
+        try {
+            block = fileManager.getRepairBlock(hash, firstChunk, groupSize, parityIndex);
+        } catch (FileNotFoundException | IllegalArgumentException e) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_NOT_FOUND);
+            return;
+        } catch (Exception e) {
+            markServerError();
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_INTERNAL);
+            return;
+        }
+        if (block == null || block.length == 0) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_NOT_FOUND);
+            return;
+        }
+        ProtocolV2.writeHeader(out, ProtocolV2.CHUNK, requestId, block.length);
+        writeShaped(out, ByteBuffer.wrap(block), requester);
+    }
+
+    // v2 Manifest: Dosyanın parça kimliklerini gönderir (içerik adresli depo
+    // kapalıysa veya dosya bilinmiyorsa NOT_FOUND).
+    private void sendManifestFrame(DataOutputStream out, int requestId, ContentId fileId) throws IOException {
+        ContentId[] manifest = fileManager.getChunkStore().getManifest(fileId.toHex());
+        int length = manifest != null ? 4 + manifest.length * ContentId.BYTES : 0;
+        if (manifest == null || length > ProtocolV2.MAX_FRAME_BYTES - ProtocolV2.HEADER_BYTES) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_NOT_FOUND);
+            return;
+        }
+        ProtocolV2.writeHeader(out, ProtocolV2.MANIFEST, requestId, length);
+        out.writeInt(manifest.length);
+        for (ContentId chunkId : manifest)
+            chunkId.write(out);
+    }
+
+    // v2 Dosya Listesi: Listeyi tek çerçevede, hash'leri ham 32 bayt olarak
+    // gönderir.
+    private void sendFileListFrame(DataOutputStream out, int requestId) throws IOException {
+        List<FileInfo> files = new ArrayList<>();
+        for (FileInfo info : fileManager.getLocalFileList()) {
+            if (ContentId.fromHex(info.getHash()) != null)
+                files.add(info); // Still hashing otherwise
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(payload);
+        body.writeInt(files.size());
+        for (FileInfo info : files) {
+            body.writeUTF(info.getFileName());
+            body.writeLong(info.getFileSize());
+            ContentId.fromHex(info.getHash()).write(body);
+        }
+        if (payload.size() > ProtocolV2.MAX_FRAME_BYTES - ProtocolV2.HEADER_BYTES) {
+            ProtocolV2.writeError(out, requestId, ProtocolV2.ERR_INTERNAL); // Catalog too large for one frame
+            return;
+        }
+        ProtocolV2.writeHeader(out, ProtocolV2.FILE_LIST, requestId, payload.size());
+        payload.writeTo(out);
+    }
+
+    // Hız Sınırlı Gönderim: Parçayı QUANTUM büyüklüğünde dilimler halinde
+    // gönderir; her dilimden önce yükleme zamanlayıcısından sıra ve hız payı
+    // bekler.
+    private void writeShaped(DataOutputStream out, ByteBuffer data, String requester) throws IOException {
+        ByteBuffer view = data.duplicate();
+        while (view.hasRemaining()) {
+            int n = Math.min(view.remaining(), UploadScheduler.QUANTUM);
+            long waitStart = System.nanoTime();
+            try {
+                uploadScheduler.acquire(requester, n);
+                requestCost.get().shapingWaitNanos += System.nanoTime() - waitStart;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException("Upload interrupted");
+            }
+            ByteBuffer slice = view.slice();
+            slice.limit(n);
+            ChunkBufferPool.writeTo(out, slice);
+            view.position(view.position() + n);
+            bytesSent.add(n);
+        }
     }
 
     // --- Client Side Methods ---
 
-    // [İstemci] Dosya Listesi İste: Hedef Peer'a bağlanıp paylaştığı dosyaları
-    // sorar.
-    public List<FileInfo> requestFileList(PeerInfo peer) {
-        List<FileInfo> result = new ArrayList<>();
+    // Bağlan: Zaman aşımı ile bağlantı kurar; ölü bir peer'a bağlanmaya çalışırken
+    // sonsuza kadar beklenmez.
+    Socket connect(InetAddress ip, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new java.net.InetSocketAddress(ip, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    // [İstemci] Peer'a Bağlan: Peer'a bilinen yolları (doğrudan ve her Relay
+    // üzerinden) ölçülen maliyete göre sırayla dener; bağlanamayan yolu
+    // işaretleyip sıradakine geçer. Dönen soket komut göndermeye hazırdır.
+    Socket openPeerConnection(PeerInfo peer) throws IOException {
+        return connectPeer(peer).socket;
+    }
+
+    private PeerConnection connectPeer(PeerInfo peer) throws IOException {
+        RouteTable routeTable = PeerManager.getInstance().getRouteTable();
+        IOException lastError = null;
+        for (RouteTable.Route route : routeTable.routesFor(peer)) {
+            long start = System.currentTimeMillis();
+            try {
+                Socket socket = openRoute(peer, route.getRelay());
+                routeTable.recordSetup(route, System.currentTimeMillis() - start);
+                return new PeerConnection(socket, route);
+            } catch (IOException e) {
+                routeTable.recordFailure(route); // Fail over to the next path
+                System.err.println("Route to " + peer.getId() + " (" + route + ") failed: " + e.getMessage());
+                lastError = e;
+            }
+        }
+        throw lastError != null ? lastError : new IOException("No route to " + peer.getId());
+    }
 
+    // Yol Aç: Peer'a doğrudan (relay == null) veya verilen Relay üzerinden
+    // bağlanır ve Relay el sıkışmasını yapar.
+    private Socket openRoute(PeerInfo peer, InetAddress relay) throws IOException {
         // Determine Connection Target (Direct or Relay)
-        InetAddress targetIp = peer.getRelayAddress() != null ? peer.getRelayAddress() : peer.getAddress();
+        InetAddress targetIp = relay != null ? relay : peer.getAddress();
         int targetPort = peer.getCommandPort(); // Default to Target's Port
 
-        if (peer.getRelayAddress() != null) {
+        if (relay != null) {
             // Find the Relay Peer to get its REAL listening port
-            PeerInfo relayPeer = PeerManager.getInstance().getPeerByIp(peer.getRelayAddress());
+            PeerInfo relayPeer = PeerManager.getInstance().getPeerByIp(relay);
             if (relayPeer != null) {
                 targetPort = relayPeer.getCommandPort();
             }
         }
 
-        try (Socket socket = new Socket(targetIp, targetPort);
+        Socket socket = connect(targetIp, targetPort);
+        if (relay != null) {
+            try {
                 DataInputStream in = new DataInputStream(socket.getInputStream());
-                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
-
-            if (peer.getRelayAddress() != null) {
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
                 // Handshake Relay
                 out.writeByte(0x03); // RELAY_REQUEST
                 out.write(peer.getAddress().getAddress()); // Final Dest IP
-                out.writeInt(peer.getCommandPort()); // Final Dest Port : IMPORTANT -> This is where we tell Relay where
-                                                     // to go
+                out.writeInt(peer.getCommandPort()); // Final Dest Port : IMPORTANT -> This is where we tell Relay
+                                                     // where to go
                 out.flush();
 
                 byte status = in.readByte();
                 if (status != 0x00)
                     throw new IOException("Relay Refused");
+            } catch (IOException e) {
+                socket.close();
+                throw e;
             }
+        }
+        return socket;
+    }
+
+    // Yolları Ölç: Birden fazla yolu bilinen her canlı peer için her yoldan v2
+    // el sıkışması yapar; kurulum süresi yolun RTT ölçüsüdür. Kullanılmayan
+    // yedek yolların ölçümü de böylece güncel kalır.
+    private void probeRoutes() {
+        if (!running)
+            return;
+        try {
+            RouteTable routeTable = PeerManager.getInstance().getRouteTable();
+            for (String peerId : routeTable.getMultiPathPeers()) {
+                PeerInfo peer = PeerManager.getInstance().getPeer(peerId);
+                if (peer == null || PeerManager.getInstance().isSuspected(peerId))
+                    continue;
+                for (RouteTable.Route route : routeTable.routesFor(peer)) {
+                    long start = System.currentTimeMillis();
+                    try (Socket socket = openRoute(peer, route.getRelay())) {
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                        DataOutputStream out = new DataOutputStream(
+                                new BufferedOutputStream(socket.getOutputStream()));
+                        negotiate(peer, in, out);
+                        routeTable.recordSetup(route, System.currentTimeMillis() - start);
+                    } catch (IOException e) {
+                        routeTable.recordFailure(route);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class PeerConnection implements Closeable {
+        private final Socket socket;
+        private final RouteTable.Route route; // Path the socket took, for throughput samples
+
+        PeerConnection(Socket socket, RouteTable.Route route) {
+            this.socket = socket;
+            this.route = route;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // [İstemci] Dosya Listesi İste: Hedef Peer'a bağlanıp paylaştığı dosyaları
+    // sorar. Peer v2 biliyorsa çerçeveli protokol, bilmiyorsa eski 0x01 komutu
+    // kullanılır.
+    public List<FileInfo> requestFileList(PeerInfo peer) {
+        List<FileInfo> result = new ArrayList<>();
+        if (!isLegacy(peer)) {
+            try (Socket socket = openPeerConnection(peer)) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                int version = negotiate(peer, in, out);
+                if (version == OVERLOADED) {
+                    System.err.println("RequestFileList: " + peer.getId() + " is overloaded");
+                    return result;
+                }
+                if (version == ProtocolV2.VERSION) {
+                    readFileListFrame(in, out, result);
+                    return result;
+                }
+            } catch (IOException e) {
+                System.err.println("RequestFileList failed to " + peer.getId() + ": " + e.getMessage());
+                return result;
+            }
+        }
+
+        try (Socket socket = openPeerConnection(peer);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
 
             out.writeByte(0x01); // GET_FILE_LIST
             out.flush();
 
             int count = in.readInt();
+            if (count == OVERLOADED) {
+                busyUntil.put(peer.getId(), System.currentTimeMillis() + BUSY_BACKOFF_MS);
+                System.err.println("RequestFileList: " + peer.getId() + " is overloaded");
+                return result;
+            }
             for (int i = 0; i < count; i++) {
                 String name = in.readUTF();
                 long size = in.readLong();
@@ -248,34 +821,263 @@ public class TransferManager {
         return result;
     }
 
+    private void readFileListFrame(DataInputStream in, DataOutputStream out, List<FileInfo> result)
+            throws IOException {
+        int requestId = nextRequestId.incrementAndGet();
+        ProtocolV2.writeHeader(out, ProtocolV2.GET_FILE_LIST, requestId, 0);
+        out.flush();
+
+        ProtocolV2.FrameHeader frame = ProtocolV2.readHeader(in);
+        if (frame == null)
+            throw new EOFException("Connection closed before file list");
+        if (frame.type != ProtocolV2.FILE_LIST || frame.requestId != requestId) {
+            in.skipNBytes(frame.payloadLength);
+            throw new IOException("Unexpected reply type " + (frame.type & 0xFF));
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            long size = in.readLong();
+            result.add(new FileInfo(name, size, ContentId.read(in).toHex()));
+        }
+    }
+
+    // Protokol Anlaşması: Bağlantı üzerinden v2 el sıkışmasını dener. v2 için
+    // ProtocolV2.VERSION, peer v2 bilmiyorsa (bağlantıyı cevapsız kapattıysa) 1
+    // döner ve peer bir süre v1 olarak hatırlanır; sunucu aşırı yüklüyse
+    // OVERLOADED döner ve peer meşgul işaretlenir.
+    private int negotiate(PeerInfo peer, DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeByte(ProtocolV2.HELLO);
+        out.writeInt(ProtocolV2.MAGIC);
+        out.writeByte(ProtocolV2.VERSION);
+        out.flush();
+
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException | java.net.SocketException e) {
+            // v1 servers ignore unknown commands and close (or reset) the connection
+            legacyUntil.put(peer.getId(), System.currentTimeMillis() + LEGACY_RECHECK_MS);
+            return 1;
+        }
+        if (magic == OVERLOADED) {
+            busyUntil.put(peer.getId(), System.currentTimeMillis() + BUSY_BACKOFF_MS);
+            return OVERLOADED;
+        }
+        byte version = in.readByte();
+        if (magic != ProtocolV2.MAGIC || version < ProtocolV2.VERSION)
+            throw new IOException("Bad v2 handshake from " + peer.getId());
+        return ProtocolV2.VERSION;
+    }
+
+    private boolean isLegacy(PeerInfo peer) {
+        Long until = legacyUntil.get(peer.getId());
+        if (until == null)
+            return false;
+        if (until > System.currentTimeMillis())
+            return true;
+        legacyUntil.remove(peer.getId(), until);
+        return false;
+    }
+
+    // Meşgul mü: Kaynak kısa süre önce "meşgul" (choked) cevabı verdiyse true;
+    // indirme zamanlayıcısı bu kaynağı atlar.
+    public boolean isBusy(PeerInfo peer) {
+        Long until = busyUntil.get(peer.getId());
+        if (until == null)
+            return false;
+        if (until > System.currentTimeMillis())
+            return true;
+        busyUntil.remove(peer.getId(), until);
+        return false;
+    }
+
+    // [İstemci] Manifest İste: Dosyanın parça kimliklerini v2 peer'dan ister.
+    // Peer v1 ise, depo kapalıysa veya hata olursa null döner.
+    public ContentId[] requestManifest(PeerInfo peer, String fileHash) {
+        ContentId fileId = ContentId.fromHex(fileHash);
+        if (fileId == null || isLegacy(peer))
+            return null;
+        try (Socket socket = openPeerConnection(peer)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (negotiate(peer, in, out) != ProtocolV2.VERSION)
+                return null;
+            int requestId = nextRequestId.incrementAndGet();
+            ProtocolV2.writeHeader(out, ProtocolV2.GET_MANIFEST, requestId, ContentId.BYTES);
+            fileId.write(out);
+            out.flush();
+
+            ProtocolV2.FrameHeader frame = ProtocolV2.readHeader(in);
+            if (frame == null || frame.type != ProtocolV2.MANIFEST || frame.requestId != requestId)
+                return null;
+            int count = in.readInt();
+            if (count < 0 || 4 + (long) count * ContentId.BYTES != frame.payloadLength)
+                throw new IOException("Malformed manifest");
+            ContentId[] manifest = new ContentId[count];
+            for (int i = 0; i < count; i++)
+                manifest[i] = ContentId.read(in);
+            return manifest;
+        } catch (IOException e) {
+            System.err.println("Manifest request failed to " + peer.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // [İstemci] Onarım Bloğu İste: Grubun parityIndex numaralı onarım bloğunu
+    // v2 peer'dan ister. Peer v1 ise, meşgulse veya hata olursa null döner.
+    public byte[] requestRepairBlock(PeerInfo peer, String fileHash, int firstChunk, int groupSize,
+            int parityIndex) {
+        ContentId fileId = ContentId.fromHex(fileHash);
+        if (fileId == null || isLegacy(peer))
+            return null;
+        try (Socket socket = openPeerConnection(peer)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (negotiate(peer, in, out) != ProtocolV2.VERSION)
+                return null;
+            int requestId = nextRequestId.incrementAndGet();
+            ProtocolV2.writeHeader(out, ProtocolV2.GET_REPAIR, requestId, ContentId.BYTES + 12);
+            fileId.write(out);
+            out.writeInt(firstChunk);
+            out.writeInt(groupSize);
+            out.writeInt(parityIndex);
+            out.flush();
+
+            ProtocolV2.FrameHeader frame = ProtocolV2.readHeader(in);
+            if (frame == null || frame.requestId != requestId)
+                return null;
+            if (frame.type == ProtocolV2.ERROR) {
+                byte code = frame.payloadLength > 0 ? in.readByte() : ProtocolV2.ERR_INTERNAL;
+                if (code == ProtocolV2.ERR_BUSY || code == ProtocolV2.ERR_OVERLOADED)
+                    busyUntil.put(peer.getId(), System.currentTimeMillis() + BUSY_BACKOFF_MS);
+                return null;
+            }
+            if (frame.type != ProtocolV2.CHUNK || frame.payloadLength > fileManager.getBufferPool().getBufferSize())
+                return null;
+            byte[] block = new byte[frame.payloadLength];
+            in.readFully(block);
+            bytesReceived.add(block.length);
+            chokeManager.recordDownloaded(peer.getAddress().getHostAddress(), block.length); // Reciprocation
+            return block;
+        } catch (IOException e) {
+            System.err.println("Repair request failed to " + peer.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     // [İstemci] Chunk İste: Hedef Peer'a bağlanıp belirli bir dosyanın belirli bir
-    // parçasını ister.
-    public byte[] requestChunk(PeerInfo peer, String fileHash, int chunkIndex) {
-        InetAddress targetIp = peer.getRelayAddress() != null ? peer.getRelayAddress() : peer.getAddress();
-        int targetPort = peer.getCommandPort();
+    // parçasını ister. Dönen tampon havuzdandır (okuma için hazır); sahipliği
+    // çağırana geçer.
+    public ByteBuffer requestChunk(PeerInfo peer, String fileHash, int chunkIndex) {
+        return requestChunks(peer, fileHash, List.of(chunkIndex)).get(chunkIndex);
+    }
 
-        if (peer.getRelayAddress() != null) {
-            PeerInfo relayPeer = PeerManager.getInstance().getPeerByIp(peer.getRelayAddress());
-            if (relayPeer != null) {
-                targetPort = relayPeer.getCommandPort();
+    // [İstemci] Toplu Chunk İste: v2 peer'a tek bağlantı üzerinden tüm istekleri
+    // cevap beklemeden gönderir (pipelining) ve cevapları istek numarasıyla
+    // eşleştirir. v1 peer'dan parçalar tek tek istenir. Gelen parçalar (indeks
+    // -> tampon) döner; eksik olanlar başarısız veya meşguldür, ayrımı
+    // isBusy() ile yapılır. Tamponların sahipliği çağırana geçer.
+    public Map<Integer, ByteBuffer> requestChunks(PeerInfo peer, String fileHash, List<Integer> chunkIndices) {
+        return requestChunks(peer, fileHash, chunkIndices, null);
+    }
+
+    // manifest verilirse (v2) parçalar kimlikleriyle istenir; peer onları bu
+    // dosyadan değil, aynı parçayı içeren başka bir dosyasından da verebilir.
+    public Map<Integer, ByteBuffer> requestChunks(PeerInfo peer, String fileHash, List<Integer> chunkIndices,
+            ContentId[] manifest) {
+        Map<Integer, ByteBuffer> result = new HashMap<>();
+        ContentId contentId = ContentId.fromHex(fileHash);
+        if (contentId != null && !isLegacy(peer)) {
+            try (PeerConnection connection = connectPeer(peer)) {
+                Socket socket = connection.socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                int version = negotiate(peer, in, out);
+                if (version == OVERLOADED)
+                    return result;
+                if (version == ProtocolV2.VERSION) {
+                    long start = System.currentTimeMillis();
+                    readChunkFrames(peer, in, out, contentId, manifest, chunkIndices, result);
+                    long bytes = 0;
+                    for (ByteBuffer buffer : result.values())
+                        bytes += buffer.remaining();
+                    PeerManager.getInstance().getRouteTable().recordTransfer(connection.route, bytes,
+                            System.currentTimeMillis() - start);
+                    return result;
+                }
+            } catch (IOException e) {
+                System.err.println("Chunk request failed to " + peer.getId() + ": " + e.getMessage());
+                return result; // Chunks read before the error are kept
             }
         }
 
-        try (Socket socket = new Socket(targetIp, targetPort);
-                DataInputStream in = new DataInputStream(socket.getInputStream());
-                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+        for (int chunkIndex : chunkIndices) {
+            ByteBuffer buffer = requestChunkV1(peer, fileHash, chunkIndex);
+            if (buffer == null)
+                break; // Busy or unreachable, the rest would fail the same way
+            result.put(chunkIndex, buffer);
+        }
+        return result;
+    }
 
-            if (peer.getRelayAddress() != null) {
-                // Handshake Relay
-                out.writeByte(0x03); // RELAY_REQUEST
-                out.write(peer.getAddress().getAddress()); // Final Dest IP
-                out.writeInt(peer.getCommandPort()); // Final Dest Port
-                out.flush();
+    private void readChunkFrames(PeerInfo peer, DataInputStream in, DataOutputStream out, ContentId contentId,
+            ContentId[] manifest, List<Integer> chunkIndices, Map<Integer, ByteBuffer> result) throws IOException {
+        Map<Integer, Integer> pending = new HashMap<>(); // Request ID -> Chunk Index
+        for (int chunkIndex : chunkIndices) {
+            int requestId = nextRequestId.incrementAndGet();
+            pending.put(requestId, chunkIndex);
+            if (manifest != null && chunkIndex < manifest.length) {
+                ProtocolV2.writeHeader(out, ProtocolV2.GET_CHUNK_BY_ID, requestId, ContentId.BYTES);
+                manifest[chunkIndex].write(out);
+            } else {
+                ProtocolV2.writeHeader(out, ProtocolV2.GET_CHUNK, requestId, ContentId.BYTES + 4);
+                contentId.write(out);
+                out.writeInt(chunkIndex);
+            }
+        }
+        out.flush();
 
-                byte status = in.readByte();
-                if (status != 0x00)
-                    throw new IOException("Relay Refused");
+        ChunkBufferPool pool = fileManager.getBufferPool();
+        while (!pending.isEmpty()) {
+            ProtocolV2.FrameHeader frame = ProtocolV2.readHeader(in);
+            if (frame == null)
+                throw new EOFException("Connection closed with " + pending.size() + " chunks outstanding");
+            Integer chunkIndex = pending.remove(frame.requestId);
+            if (chunkIndex == null) {
+                in.skipNBytes(frame.payloadLength); // Not ours
+                continue;
+            }
+            if (frame.type == ProtocolV2.ERROR) {
+                byte code = frame.payloadLength > 0 ? in.readByte() : ProtocolV2.ERR_INTERNAL;
+                in.skipNBytes(Math.max(0, frame.payloadLength - 1));
+                if (code == ProtocolV2.ERR_BUSY || code == ProtocolV2.ERR_OVERLOADED)
+                    busyUntil.put(peer.getId(), System.currentTimeMillis() + BUSY_BACKOFF_MS);
+                continue;
             }
+            if (frame.type != ProtocolV2.CHUNK || frame.payloadLength > pool.getBufferSize()) {
+                in.skipNBytes(frame.payloadLength);
+                continue;
+            }
+            ByteBuffer buffer = pool.acquire();
+            try {
+                ChunkBufferPool.readFully(in, buffer, frame.payloadLength);
+            } catch (IOException e) {
+                pool.release(buffer);
+                throw e;
+            }
+            buffer.flip();
+            result.put(chunkIndex, buffer);
+            busyUntil.remove(peer.getId());
+            bytesReceived.add(frame.payloadLength);
+            chokeManager.recordDownloaded(peer.getAddress().getHostAddress(), frame.payloadLength); // Reciprocation
+        }
+    }
+
+    private ByteBuffer requestChunkV1(PeerInfo peer, String fileHash, int chunkIndex) {
+        try (Socket socket = openPeerConnection(peer);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
 
             out.writeByte(0x02); // GET_CHUNK
             out.writeUTF(fileHash);
@@ -283,9 +1085,23 @@ public class TransferManager {
             out.flush();
 
             int length = in.readInt();
-            if (length > 0) {
-                byte[] buffer = new byte[length];
-                in.readFully(buffer);
+            if (length == CHUNK_BUSY || length == OVERLOADED) {
+                busyUntil.put(peer.getId(), System.currentTimeMillis() + BUSY_BACKOFF_MS);
+                return null;
+            }
+            ChunkBufferPool pool = fileManager.getBufferPool();
+            if (length > 0 && length <= pool.getBufferSize()) {
+                ByteBuffer buffer = pool.acquire();
+                try {
+                    ChunkBufferPool.readFully(in, buffer, length);
+                } catch (IOException e) {
+                    pool.release(buffer);
+                    throw e;
+                }
+                buffer.flip();
+                busyUntil.remove(peer.getId());
+                bytesReceived.add(length);
+                chokeManager.recordDownloaded(peer.getAddress().getHostAddress(), length); // Reciprocation
                 return buffer;
             }
 
@@ -0,0 +1,200 @@
+package com.cse471.network;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class UploadScheduler {
+    public static final int QUANTUM = 64 * 1024; // Bytes credited to a peer per round
+    private static final long GLOBAL_LIMIT_KBPS = Long.getLong("p2p.uploadLimitKBps", 0); // 0 = Unlimited
+    private static final long PEER_LIMIT_KBPS = Long.getLong("p2p.peerUploadLimitKBps", 0); // 0 = Unlimited
+    private static final long IDLE_PEER_MS = 60_000; // Per-peer state kept this long, so gaps do not reset the bucket
+    private static final long THROTTLED_PAUSE_MS = 5; // Every waiting peer is over its own limit
+
+    private final long globalLimitKBps;
+    private final long peerLimitKBps;
+    private final TokenBucket globalBucket; // null = unlimited
+    private final double peerRate; // Bytes/s, 0 = unlimited
+    private final boolean enabled;
+
+    private final Map<String, PeerQueue> peers = new HashMap<>();
+    private final ArrayDeque<PeerQueue> activeList = new ArrayDeque<>(); // Peers with waiting slices, round-robin
+    private Thread dispatcher;
+    private volatile boolean running = false;
+    private long lastIdleSweep = System.currentTimeMillis();
+
+    // Yapıcı Metot: Global (-Dp2p.uploadLimitKBps) ve peer başına
+    // (-Dp2p.peerUploadLimitKBps) gönderim hızlarını okur. İkisi de verilmemişse
+    // zamanlayıcı devre dışıdır ve gönderimler beklemeden yapılır.
+    public UploadScheduler() {
+        this(GLOBAL_LIMIT_KBPS, PEER_LIMIT_KBPS);
+    }
+
+    // Testler için: Hızlar sistem özelliklerinden okunmadan verilir.
+    UploadScheduler(long globalLimitKBps, long peerLimitKBps) {
+        this.globalLimitKBps = globalLimitKBps;
+        this.peerLimitKBps = peerLimitKBps;
+        if (globalLimitKBps > 0) {
+            double rate = globalLimitKBps * 1024.0;
+            globalBucket = new TokenBucket(rate, Math.max(rate / 4, QUANTUM));
+        } else {
+            globalBucket = null;
+        }
+        peerRate = peerLimitKBps * 1024.0;
+        enabled = globalBucket != null || peerRate > 0;
+    }
+
+    public void start() {
+        if (!enabled || running)
+            return;
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "Upload-Scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        System.out.println("Upload shaping: global " + (globalBucket != null ? globalLimitKBps + " KB/s" : "unlimited")
+                + ", per peer " + (peerRate > 0 ? peerLimitKBps + " KB/s" : "unlimited"));
+    }
+
+    public void stop() {
+        running = false;
+        if (dispatcher != null)
+            dispatcher.interrupt();
+        synchronized (this) {
+            // Release waiters so handler threads do not hang on shutdown
+            for (PeerQueue queue : peers.values()) {
+                for (Grant grant : queue.waiting)
+                    grant.grant();
+                queue.waiting.clear();
+            }
+            activeList.clear();
+        }
+    }
+
+    // Gönderim İzni: Peer'a bytes kadar veri göndermeden önce çağrılır; sırası ve
+    // hız payı gelene kadar bekler. Kısıtlama yoksa hemen döner.
+    public void acquire(String peer, int bytes) throws InterruptedException {
+        if (!enabled || !running)
+            return;
+        Grant grant = new Grant(bytes);
+        synchronized (this) {
+            PeerQueue queue = peers.computeIfAbsent(peer, k -> new PeerQueue(peerRate));
+            queue.waiting.addLast(grant);
+            queue.lastActive = System.currentTimeMillis();
+            if (!queue.scheduled) {
+                queue.scheduled = true;
+                activeList.addLast(queue);
+            }
+            notifyAll();
+        }
+        grant.await();
+    }
+
+    // Dağıtıcı Döngüsü: Deficit Round Robin. Sırası gelen peer'ın kredisine bir
+    // QUANTUM eklenir; kredisi yettiği kadar bekleyen dilime izin verilir.
+    // Böylece yarışma altında her peer eşit pay alır, büyük istekler küçükleri
+    // bekletmez. Peer başına sınırı dolan peer atlanır, kredisi korunur.
+    private void dispatchLoop() {
+        try {
+            while (running) {
+                PeerQueue queue;
+                synchronized (this) {
+                    while (activeList.isEmpty())
+                        wait();
+                    queue = activeList.pollFirst();
+                    sweepIdlePeers();
+                }
+
+                boolean throttled = false;
+                queue.deficit += QUANTUM;
+                while (true) {
+                    Grant head;
+                    synchronized (this) {
+                        head = queue.waiting.peekFirst();
+                    }
+                    if (head == null || head.bytes > queue.deficit)
+                        break;
+                    if (queue.bucket != null && !queue.bucket.tryAcquire(head.bytes)) {
+                        throttled = true;
+                        break;
+                    }
+                    if (globalBucket != null)
+                        globalBucket.acquire(head.bytes);
+                    synchronized (this) {
+                        queue.waiting.pollFirst();
+                    }
+                    queue.deficit -= head.bytes;
+                    head.grant();
+                }
+
+                synchronized (this) {
+                    if (queue.waiting.isEmpty()) {
+                        queue.deficit = 0; // Idle peers do not bank credit
+                        queue.scheduled = false;
+                    } else {
+                        if (throttled)
+                            queue.deficit = Math.min(queue.deficit, QUANTUM); // Credit does not grow while throttled
+                        activeList.addLast(queue);
+                        if (throttled && allThrottled())
+                            wait(THROTTLED_PAUSE_MS);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stop gracefully
+        }
+    }
+
+    // Tüm bekleyen peerlar kendi hız sınırında mı (boşuna dönmemek için).
+    private boolean allThrottled() {
+        for (PeerQueue queue : activeList) {
+            Grant head = queue.waiting.peekFirst();
+            if (head != null && (queue.bucket == null || queue.bucket.getAvailableTokens() >= head.bytes))
+                return false;
+        }
+        return true;
+    }
+
+    private void sweepIdlePeers() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleSweep < IDLE_PEER_MS)
+            return;
+        lastIdleSweep = now;
+        for (Iterator<PeerQueue> it = peers.values().iterator(); it.hasNext();) {
+            PeerQueue queue = it.next();
+            if (!queue.scheduled && now - queue.lastActive > IDLE_PEER_MS)
+                it.remove();
+        }
+    }
+
+    private static final class PeerQueue {
+        private final ArrayDeque<Grant> waiting = new ArrayDeque<>();
+        private final TokenBucket bucket; // null = no per-peer limit
+        private long deficit = 0;
+        private boolean scheduled = false; // In the active list
+        private long lastActive = System.currentTimeMillis();
+
+        PeerQueue(double rate) {
+            this.bucket = rate > 0 ? new TokenBucket(rate, Math.max(rate / 4, QUANTUM)) : null;
+        }
+    }
+
+    private static final class Grant {
+        private final int bytes;
+        private boolean granted = false;
+
+        Grant(int bytes) {
+            this.bytes = bytes;
+        }
+
+        synchronized void grant() {
+            granted = true;
+            notifyAll();
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (!granted)
+                wait();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.cse471.player;
+
+public class BufferingController {
+    private static final long DEFAULT_BITRATE_BPS = 5_000_000; // Assumed when the duration is unknown (5 Mbit/s)
+    private static final int MIN_CHUNKS = 1;
+    private static final double SAFETY_FACTOR = 1.25; // Plan with 80% of the measured rate
+    private static final double ALPHA = 0.2; // Moving Average Weight
+
+    private final long fileSize;
+    private final int chunkSize;
+    private final int totalChunks;
+
+    private long mediaDurationMs = 0; // 0 = Unknown
+    private double downloadRate = -1; // Bytes per second (EWMA), -1 = no sample yet
+    private double lossRate = 0; // Failed fetches ratio (EWMA)
+    private int requiredChunks;
+    private String lastDecision = "Waiting for first chunk";
+
+    // Yapıcı Metot: Dosya boyutu ve parça bilgisiyle kontrolcüyü başlatır.
+    public BufferingController(long fileSize, int chunkSize, int totalChunks) {
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.totalChunks = totalChunks;
+        this.requiredChunks = Math.min(MIN_CHUNKS, totalChunks);
+    }
+
+    // Süreyi Ayarla: Videonun süresi öğrenildiğinde (container metadata ya da
+    // oynatıcı) bitrate tahminini günceller.
+    public synchronized void setMediaDuration(long durationMs) {
+        if (durationMs > 0) {
+            this.mediaDurationMs = durationMs;
+            evaluate();
+        }
+    }
+
+    // Ölçüm Ekle: İndirilen bir parçanın boyutu ve süresiyle indirme hızını
+    // (bayt/sn) günceller.
+    public synchronized void onChunkReceived(int bytes, long durationMs) {
+        double sample = bytes * 1000.0 / Math.max(1, durationMs);
+        downloadRate = downloadRate < 0 ? sample : (ALPHA * sample) + ((1.0 - ALPHA) * downloadRate);
+        lossRate = (1.0 - ALPHA) * lossRate;
+        evaluate();
+    }
+
+    // Kayıp Ekle: Başarısız bir parça isteğini kayıp oranına yansıtır.
+    public synchronized void onChunkFailed() {
+        lossRate = ALPHA + ((1.0 - ALPHA) * lossRate);
+        evaluate();
+    }
+
+    // Değerlendir: Kesintisiz oynatma için gereken en az ön tamponu hesaplar.
+    // İndirme hızı bitrate'in altındaysa, dosyanın sonuna kadar oynatıcının
+    // indirmeyi yakalamaması için gereken fark kadar tampon istenir:
+    // B = dosyaBoyutu * (1 - hız / bitrate).
+    private void evaluate() {
+        if (downloadRate < 0)
+            return;
+
+        double bitrate = getEstimatedBitrate() / 8.0; // Bytes per second
+        double effectiveRate = downloadRate * (1.0 - lossRate) / SAFETY_FACTOR;
+
+        long prebufferBytes;
+        if (effectiveRate >= bitrate) {
+            prebufferBytes = (long) MIN_CHUNKS * chunkSize;
+        } else {
+            prebufferBytes = (long) (fileSize * (1.0 - effectiveRate / bitrate));
+        }
+
+        int chunks = (int) Math.ceil((double) prebufferBytes / chunkSize);
+        int previous = requiredChunks;
+        requiredChunks = Math.max(Math.min(MIN_CHUNKS, totalChunks), Math.min(totalChunks, chunks));
+        lastDecision = String.format("bitrate=%d kbit/s, rate=%d kbit/s, loss=%.0f%% -> prebuffer %d chunk(s)",
+                getEstimatedBitrate() / 1000, (long) (downloadRate * 8 / 1000), lossRate * 100, requiredChunks);
+        if (previous != requiredChunks) {
+            System.out.println("Buffering: " + lastDecision);
+        }
+    }
+
+    // Tahmini Bitrate: Süre biliniyorsa dosyaBoyutu / süre, bilinmiyorsa
+    // varsayılan değer (bit/sn).
+    public synchronized long getEstimatedBitrate() {
+        if (mediaDurationMs > 0)
+            return fileSize * 8 * 1000 / mediaDurationMs;
+        return DEFAULT_BITRATE_BPS;
+    }
+
+    public synchronized double getDownloadRate() {
+        return Math.max(0, downloadRate);
+    }
+
+    public synchronized double getLossRate() {
+        return lossRate;
+    }
+
+    // Gereken Tampon: Oynatmaya başlamadan önce baştan kesintisiz gelmiş olması
+    // gereken parça sayısı.
+    public synchronized int getRequiredChunks() {
+        return requiredChunks;
+    }
+
+    // Oynatmaya Hazır mı: Kesintisiz gelen parça sayısı gereken tamponu
+    // karşılıyor mu?
+    public synchronized boolean isReadyToPlay(int contiguousChunks) {
+        return downloadRate >= 0 && contiguousChunks >= requiredChunks;
+    }
+
+    public synchronized String getLastDecision() {
+        return lastDecision;
+    }
+}
@@ -0,0 +1,91 @@
+package com.cse471.player;
+
+import com.cse471.file.DownloadSession;
+import com.cse471.file.FileManager;
+import uk.co.caprica.vlcj.media.callback.seekable.SeekableCallbackMedia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class DownloadStreamMedia extends SeekableCallbackMedia {
+    private static final long CHUNK_WAIT_MS = 60_000; // Give up on a chunk after 1 minute
+
+    private final DownloadSession session;
+    private final FileManager fileManager;
+    private long position = 0;
+    // Chunk currently held in memory for VLC's small sequential reads
+    private ByteBuffer currentChunk;
+    private int currentIndex = -1;
+
+    // Yapıcı Metot: VLC'nin okuyacağı veriyi devam eden indirme oturumundan
+    // sağlar.
+    public DownloadStreamMedia(DownloadSession session, FileManager fileManager) {
+        this.session = session;
+        this.fileManager = fileManager;
+    }
+
+    @Override
+    protected long onGetSize() {
+        return session.getFileInfo().getFileSize();
+    }
+
+    @Override
+    protected boolean onOpen() {
+        position = 0;
+        currentIndex = -1;
+        currentChunk = fileManager.getBufferPool().acquireLongLived(); // Held while the player is open
+        return true;
+    }
+
+    // Oku: İstenen konumdaki parça gelene kadar bekler (bekleme sırasında parça
+    // öncelikli indirilir), sonra veriyi bellekten VLC'ye kopyalar.
+    @Override
+    protected int onRead(byte[] buffer, int bufferSize) throws IOException {
+        long fileSize = session.getFileInfo().getFileSize();
+        if (position >= fileSize)
+            return 0; // End of stream
+
+        int chunkSize = session.getChunkSize();
+        int index = (int) (position / chunkSize);
+        if (index != currentIndex) {
+            session.setPlaybackChunk(index);
+            try {
+                if (!session.awaitChunk(index, CHUNK_WAIT_MS))
+                    return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            fileManager.readDownloadedChunk(session, index, currentChunk);
+            currentIndex = index;
+        }
+
+        int offsetInChunk = (int) (position - (long) index * chunkSize);
+        int available = currentChunk.limit() - offsetInChunk;
+        if (available <= 0)
+            return -1;
+        int length = Math.min(bufferSize, available);
+        ByteBuffer view = currentChunk.duplicate();
+        view.position(offsetInChunk);
+        view.get(buffer, 0, length);
+        position += length;
+        return length;
+    }
+
+    // Atla (Seek): VLC'nin istediği yeni konumu indirme oturumuna bildirir,
+    // böylece o bölgenin parçaları hemen öncelikli indirilir.
+    @Override
+    protected boolean onSeek(long offset) {
+        if (offset != position && (offset / session.getChunkSize()) != currentIndex)
+            session.seekTo(offset);
+        position = offset;
+        return true;
+    }
+
+    @Override
+    protected void onClose() {
+        fileManager.getBufferPool().release(currentChunk);
+        currentChunk = null;
+        currentIndex = -1;
+    }
+}
@@ -0,0 +1,146 @@
+package com.cse471.player;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class Mp4Probe {
+    private static final String[] TOP_LEVEL_TYPES = { "ftyp", "moov", "mdat", "free", "skip", "wide", "pdin",
+            "uuid", "styp" };
+
+    private final long moovOffset; // -1 = Not an MP4 or no index found
+    private final long durationMs; // 0 = Unknown
+
+    private Mp4Probe(long moovOffset, long durationMs) {
+        this.moovOffset = moovOffset;
+        this.durationMs = durationMs;
+    }
+
+    // İndeks Konumu: moov kutusunun (veya ilk parçada görülemeyen ilk kutunun)
+    // dosyadaki başlangıç konumu. Bulunamadıysa -1.
+    public long getMoovOffset() {
+        return moovOffset;
+    }
+
+    // Süre: moov ilk parçadaysa mvhd kutusundan okunan video süresi (ms), yoksa 0.
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    // İlk Parçayı İncele: Üst düzey MP4 kutularını (box) dolaşır. moov ilk
+    // parçadaysa süreyi okur; değilse (genelde mdat'tan sonra, dosyanın sonunda)
+    // ilk parçanın dışında kalan ilk kutunun konumunu döner. MP4 değilse null.
+    public static Mp4Probe probe(ByteBuffer firstChunk, long fileSize) {
+        int base = firstChunk.position();
+        int available = firstChunk.remaining();
+        if (available < 8 || !isTopLevelType(typeAt(firstChunk, base + 4)))
+            return null;
+
+        long offset = 0;
+        while (offset + 8 <= available) {
+            int pos = base + (int) offset;
+            long size = firstChunk.getInt(pos) & 0xFFFFFFFFL;
+            String type = typeAt(firstChunk, pos + 4);
+            int headerSize = 8;
+            if (size == 1) {
+                if (offset + 16 > available)
+                    break;
+                size = firstChunk.getLong(pos + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = fileSize - offset; // Box extends to end of file
+            }
+            if (size < headerSize || size > fileSize - offset || !isTopLevelType(type))
+                return new Mp4Probe(-1, 0); // Corrupt or unknown layout, keep sequential order
+
+            if (type.equals("moov")) {
+                long duration = offset + size <= available
+                        ? parseDuration(firstChunk, pos + headerSize, (int) (size - headerSize))
+                        : 0;
+                return new Mp4Probe(offset, duration);
+            }
+            offset += size;
+        }
+
+        // Next box header lies beyond the first chunk: this is where the index
+        // lives in files muxed with moov at the end
+        if (offset < fileSize)
+            return new Mp4Probe(offset, 0);
+        return new Mp4Probe(-1, 0);
+    }
+
+    // moov'dan Süre Oku: Verilen konumdaki moov kutusunun içindeki mvhd kutusunu
+    // bulup süreyi (ms) döner. Okunamazsa 0.
+    public static long parseMoovDuration(ByteBuffer buffer, int moovPosition) {
+        if (moovPosition + 8 > buffer.limit() || !typeAt(buffer, moovPosition + 4).equals("moov"))
+            return 0;
+        long size = buffer.getInt(moovPosition) & 0xFFFFFFFFL;
+        int headerSize = size == 1 ? 16 : 8;
+        int end = (int) Math.min(buffer.limit(), moovPosition + (size > headerSize ? size : buffer.limit()));
+        return parseDuration(buffer, moovPosition + headerSize, end - moovPosition - headerSize);
+    }
+
+    // mvhd Ayrıştır: moov'un çocuk kutuları arasında mvhd'yi arar; timescale ve
+    // duration alanlarından süreyi hesaplar. Boyutu tutarsız bir kutuda (8'den
+    // küçük veya moov'un dışına taşan) aramayı bırakır; ilk parça uzak bir
+    // peer'dan geldiği için boyutlara güvenilmez.
+    private static long parseDuration(ByteBuffer buffer, int start, int length) {
+        long pos = start;
+        long end = Math.min(buffer.limit(), (long) start + length);
+        while (pos + 8 <= end) {
+            int p = (int) pos;
+            long size = buffer.getInt(p) & 0xFFFFFFFFL;
+            String type = typeAt(buffer, p + 4);
+            int headerSize = 8;
+            if (size == 1) {
+                if (pos + 16 > end)
+                    return 0;
+                size = buffer.getLong(p + 8); // 64-bit size
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - pos; // Box extends to the end of moov
+            }
+            if (size < headerSize || size > end - pos)
+                return 0;
+            if (type.equals("mvhd")) {
+                int body = p + headerSize;
+                long boxEnd = pos + size;
+                if (body + 4 > boxEnd)
+                    return 0;
+                int version = buffer.get(body) & 0xFF;
+                long timescale;
+                long duration;
+                if (version == 1) {
+                    if (body + 32 > boxEnd)
+                        return 0;
+                    timescale = buffer.getInt(body + 20) & 0xFFFFFFFFL;
+                    duration = buffer.getLong(body + 24);
+                } else {
+                    if (body + 20 > boxEnd)
+                        return 0;
+                    timescale = buffer.getInt(body + 12) & 0xFFFFFFFFL;
+                    duration = buffer.getInt(body + 16) & 0xFFFFFFFFL;
+                }
+                if (timescale == 0 || duration <= 0 || duration > Long.MAX_VALUE / 1000)
+                    return 0;
+                return duration * 1000 / timescale;
+            }
+            pos += size;
+        }
+        return 0;
+    }
+
+    private static String typeAt(ByteBuffer buffer, int pos) {
+        byte[] type = new byte[4];
+        for (int i = 0; i < 4; i++)
+            type[i] = buffer.get(pos + i);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isTopLevelType(String type) {
+        for (String known : TOP_LEVEL_TYPES) {
+            if (known.equals(type))
+                return true;
+        }
+        return false;
+    }
+}
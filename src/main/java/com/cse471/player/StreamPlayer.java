@@ -1,5 +1,7 @@
 package com.cse471.player;
 
+import com.cse471.file.DownloadSession;
+import com.cse471.file.FileManager;
 import uk.co.caprica.vlcj.player.component.CallbackMediaPlayerComponent;
 import uk.co.caprica.vlcj.factory.discovery.NativeDiscovery;
 
@@ -8,6 +10,8 @@ import java.awt.*;
 
 public class StreamPlayer extends JPanel {
     private CallbackMediaPlayerComponent mediaPlayerComponent;
+    private JSlider seekSlider;
+    private boolean updatingSlider = false; // True while the slider follows playback (not a user seek)
 
     // Yapıcı Metot: VLC motorunu (NativeDiscovery) bulur ve Swing bileşenine gömer.
     public StreamPlayer() {
@@ -38,6 +42,12 @@ public class StreamPlayer extends JPanel {
                         public void finished(uk.co.caprica.vlcj.player.base.MediaPlayer mediaPlayer) {
                             System.out.println("VLCj (Software) Status: Finished");
                         }
+
+                        @Override
+                        public void positionChanged(uk.co.caprica.vlcj.player.base.MediaPlayer mediaPlayer,
+                                float newPosition) {
+                            SwingUtilities.invokeLater(() -> updateSlider(newPosition));
+                        }
                     });
 
         } catch (Error | Exception e) {
@@ -63,17 +73,37 @@ public class StreamPlayer extends JPanel {
         pauseButton.addActionListener(e -> pause());
         stopButton.addActionListener(e -> stop());
 
+        // Seek Bar (0 - 1000 = 0% - 100%)
+        seekSlider = new JSlider(0, 1000, 0);
+        seekSlider.addChangeListener(e -> {
+            if (!updatingSlider && !seekSlider.getValueIsAdjusting()) {
+                seek(seekSlider.getValue() / 1000f);
+            }
+        });
+
         controlsPanel.add(pauseButton);
         controlsPanel.add(stopButton);
+        controlsPanel.add(seekSlider);
 
         add(controlsPanel, BorderLayout.SOUTH);
     }
 
+    private void updateSlider(float position) {
+        if (seekSlider.getValueIsAdjusting())
+            return;
+        updatingSlider = true;
+        seekSlider.setValue((int) (position * 1000));
+        updatingSlider = false;
+    }
+
     private String currentFilePath;
+    private DownloadSession currentSession;
+    private FileManager currentFileManager;
 
     // Videoyu Oynat: Verilen dosya yolundaki videoyu VLC motoru ile oynatır.
     public void play(String filePath) {
         this.currentFilePath = filePath;
+        this.currentSession = null;
         System.out.println("StreamPlayer (Software): play() called for " + filePath);
         if (mediaPlayerComponent != null) {
             boolean result = mediaPlayerComponent.mediaPlayer().media().play(filePath);
@@ -81,6 +111,34 @@ public class StreamPlayer extends JPanel {
         }
     }
 
+    // Akıştan Oynat: Videoyu diskteki yarım dosyadan değil, doğrudan indirme
+    // oturumundan oynatır. Henüz gelmemiş bir bölge okunursa VLC o parça gelene
+    // kadar bekler.
+    public void play(DownloadSession session, FileManager fileManager) {
+        this.currentSession = session;
+        this.currentFileManager = fileManager;
+        this.currentFilePath = null;
+        System.out.println("StreamPlayer (Software): streaming " + session.getFileInfo().getFileName());
+        if (mediaPlayerComponent != null) {
+            boolean result = mediaPlayerComponent.mediaPlayer().media()
+                    .play(new DownloadStreamMedia(session, fileManager));
+            System.out.println("Invocation Result: " + result);
+        }
+    }
+
+    // Konuma Atla (Seek): Oynatmayı verilen orana (0.0 - 1.0) taşır. Akıştan
+    // oynatılıyorsa indirme, VLC okumaya başlamadan önce yeni konuma
+    // yönlendirilir.
+    public void seek(float position) {
+        if (currentSession != null) {
+            long offset = (long) (position * currentSession.getFileInfo().getFileSize());
+            currentSession.seekTo(offset);
+        }
+        if (mediaPlayerComponent != null) {
+            mediaPlayerComponent.mediaPlayer().controls().setPosition(position);
+        }
+    }
+
     public void stop() {
         if (mediaPlayerComponent != null) {
             mediaPlayerComponent.mediaPlayer().controls().stop();
@@ -91,7 +149,10 @@ public class StreamPlayer extends JPanel {
         if (mediaPlayerComponent != null) {
             var player = mediaPlayerComponent.mediaPlayer();
             // If the video ended or stopped, restart properly
-            if (currentFilePath != null && !player.status().isPlaying() && !player.status().isPlayable()) {
+            boolean ended = !player.status().isPlaying() && !player.status().isPlayable();
+            if (ended && currentSession != null) {
+                play(currentSession, currentFileManager);
+            } else if (ended && currentFilePath != null) {
                 play(currentFilePath);
             } else {
                 player.controls().pause();
@@ -0,0 +1,112 @@
+package com.cse471.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ChunkCacheTest {
+    private static final int CHUNK = 256 * 1024;
+    private static final int SLOTS = 16;
+
+    private static ByteBuffer chunk(int seed, int length) {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++)
+            data.put((byte) (seed + i));
+        data.flip();
+        return data;
+    }
+
+    @Test
+    public void storesACopyAndLeavesTheSourceUntouched() {
+        ChunkBufferPool pool = new ChunkBufferPool(CHUNK, SLOTS);
+        ChunkCache cache = new ChunkCache((long) SLOTS * CHUNK, pool);
+        ByteBuffer data = chunk(7, 1000); // Short last chunk of a file
+
+        assertTrue(cache.put("f", 3, data));
+        assertEquals(0, data.position());
+
+        ByteBuffer dst = ByteBuffer.allocate(CHUNK);
+        assertTrue(cache.get("f", 3, dst));
+        dst.flip();
+        assertEquals(data, dst);
+        assertFalse(cache.get("f", 4, ByteBuffer.allocate(CHUNK)));
+        assertEquals(1000, cache.getBytesServed());
+    }
+
+    @Test
+    public void evictedSlotsGoBackToThePool() {
+        ChunkBufferPool pool = new ChunkBufferPool(CHUNK, SLOTS);
+        ChunkCache cache = new ChunkCache(2L * CHUNK, pool);
+
+        cache.put("f", 0, chunk(0, CHUNK));
+        cache.put("f", 1, chunk(1, CHUNK));
+        assertEquals(0, pool.getPooledCount());
+        cache.put("f", 2, chunk(2, CHUNK)); // Evicts chunk 0
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, pool.getPooledCount());
+        assertFalse(cache.contains("f", 0));
+
+        cache.invalidate("f");
+        assertEquals(0, cache.getUsedBytes());
+        assertEquals(3, pool.getPooledCount());
+    }
+
+    @Test
+    public void rejectsChunksLargerThanASlot() {
+        ChunkBufferPool pool = new ChunkBufferPool(CHUNK, SLOTS);
+        ChunkCache cache = new ChunkCache((long) SLOTS * CHUNK, pool);
+        assertFalse(cache.put("f", 0, ByteBuffer.allocate(CHUNK + 1)));
+        assertEquals(0, pool.getAllocations());
+    }
+
+    // GC pressure: a full cache under a stream of misses keeps recycling its
+    // slots, so direct allocations stop once it is warm, however many chunks
+    // pass through it
+    @Test
+    public void steadyStateInsertsDoNotAllocate() {
+        ChunkBufferPool pool = new ChunkBufferPool(CHUNK, SLOTS);
+        ChunkCache cache = new ChunkCache((long) SLOTS * CHUNK, pool);
+        ByteBuffer data = chunk(1, CHUNK);
+        for (int i = 0; i < SLOTS * 2; i++)
+            cache.put("warmup", i, data);
+        long allocationsWarm = pool.getAllocations();
+        long directBefore = directMemoryUsed();
+        long gcBefore = gcCount();
+
+        int inserts = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < inserts; i++)
+            cache.put("stream", i, data);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        long allocated = pool.getAllocations() - allocationsWarm;
+        System.out.println("ChunkCache: " + inserts + " inserts in " + elapsedMs + " ms, " + allocated
+                + " new direct buffers, direct memory delta " + (directMemoryUsed() - directBefore) / 1024
+                + " KB, " + (gcCount() - gcBefore) + " GCs (allocating a buffer per insert would be "
+                + (long) inserts * CHUNK / (1024 * 1024) + " MB)");
+        assertEquals(0, allocated);
+        assertEquals(inserts + SLOTS, cache.getEvictions());
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean bean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (bean.getName().equals("direct"))
+                return bean.getMemoryUsed();
+        }
+        return 0;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, bean.getCollectionCount());
+        return count;
+    }
+}
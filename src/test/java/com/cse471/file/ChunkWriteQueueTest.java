@@ -0,0 +1,98 @@
+package com.cse471.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ChunkWriteQueueTest {
+    // No buffer folder: every write fails with an IOException
+    private final FileManager fileManager = new FileManager();
+
+    @Test
+    public void everyFailedChunkGoesToTheOwnerOnce() throws Exception {
+        ChunkWriteQueue queue = new ChunkWriteQueue(fileManager);
+        for (int i = 0; i < 5; i++)
+            queue.submit("a.mp4", i, ByteBuffer.allocate(16)); // Several failures between two takes
+
+        queue.awaitWrites("a.mp4"); // The player's flush must not consume them
+        assertTrue(queue.hasFailed("a.mp4", 3));
+
+        BitSet failed = queue.takeFailures("a.mp4");
+        assertEquals(5, failed.cardinality());
+        assertEquals(0, failed.nextSetBit(0));
+        assertEquals(4, failed.length() - 1);
+        assertTrue(queue.takeFailures("a.mp4").isEmpty());
+        assertFalse(queue.hasFailed("a.mp4", 3));
+    }
+
+    @Test
+    public void aSuccessfulRewriteClearsTheFailure() throws Exception {
+        ChunkWriteQueue queue = new ChunkWriteQueue(fileManager);
+        queue.submit("c.mp4", 2, ByteBuffer.allocate(16));
+        queue.awaitWrites("c.mp4");
+        assertTrue(queue.hasFailed("c.mp4", 2));
+
+        File folder = Files.createTempDirectory("write-queue").toFile();
+        try {
+            fileManager.setBufferFolder(folder);
+            queue.submit("c.mp4", 2, ByteBuffer.allocate(16)); // Re-downloaded before the owner looked
+            queue.awaitWrites("c.mp4");
+            assertFalse(queue.hasFailed("c.mp4", 2));
+            assertTrue(queue.takeFailures("c.mp4").isEmpty());
+        } finally {
+            new File(folder, "c.mp4").delete();
+            folder.delete();
+        }
+    }
+
+    // Submits racing with flushes from another thread (the VLC reader flushes
+    // while the download loop keeps writing): every failed chunk must reach the
+    // download exactly once
+    @Test
+    public void failuresSurviveConcurrentFlushes() throws Exception {
+        ChunkWriteQueue queue = new ChunkWriteQueue(fileManager);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) {
+                try {
+                    queue.awaitWrites("b.mp4");
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        flusher.start();
+
+        int rounds = 2000;
+        BitSet reported = new BitSet();
+        int duplicates = 0;
+        for (int i = 0; i < rounds; i++) {
+            queue.submit("b.mp4", i, ByteBuffer.allocate(16));
+            if (i % 7 == 0) {
+                BitSet taken = queue.takeFailures("b.mp4");
+                if (taken.intersects(reported))
+                    duplicates++;
+                reported.or(taken);
+            }
+        }
+        done.set(true);
+        flusher.join();
+        queue.awaitWrites("b.mp4");
+        BitSet taken = queue.takeFailures("b.mp4");
+        if (taken.intersects(reported))
+            duplicates++;
+        reported.or(taken);
+
+        assertEquals(0, duplicates);
+        assertEquals(rounds, reported.cardinality());
+    }
+}
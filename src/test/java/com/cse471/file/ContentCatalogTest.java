@@ -0,0 +1,125 @@
+package com.cse471.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class ContentCatalogTest {
+
+    private static ContentId randomId(Random random) {
+        return new ContentId(random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+    }
+
+    private static Path libraryPath(int i) {
+        return Paths.get("library", "video-" + i + ".mp4").toAbsolutePath();
+    }
+
+    @Test
+    public void findsEveryFileAfterGrowing() {
+        Random random = new Random(1);
+        ContentId[] ids = new ContentId[5000]; // Several resizes past the initial 1024 slots
+        ContentCatalog.Builder library = new ContentCatalog.Builder();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = randomId(random);
+            library.put(ids[i], i, libraryPath(i));
+        }
+        library.put(ids[0], 42, libraryPath(0)); // Same content again replaces the entry
+        ContentCatalog catalog = new ContentCatalog();
+        catalog.publish(library);
+
+        assertEquals(ids.length, catalog.size());
+        for (int i = 1; i < ids.length; i++) {
+            ContentCatalog.Entry entry = catalog.get(ids[i]);
+            assertEquals(i, entry.size);
+            assertEquals(libraryPath(i), entry.path());
+            assertEquals("video-" + i + ".mp4", entry.name());
+        }
+        assertEquals(42, catalog.get(ids[0]).size);
+        assertNull(catalog.get(randomId(random)));
+
+        List<FileInfo> files = catalog.toFileInfos();
+        assertEquals(ids.length, files.size());
+        assertTrue(catalog.hexIds().contains(ids[7].toHex()));
+    }
+
+    @Test
+    public void readersKeepTheOldTableUntilARescanIsPublished() {
+        Random random = new Random(2);
+        ContentId kept = randomId(random);
+        ContentId added = randomId(random);
+        ContentCatalog catalog = new ContentCatalog();
+        ContentCatalog.Builder first = new ContentCatalog.Builder();
+        first.put(kept, 1, libraryPath(1));
+        catalog.publish(first);
+
+        ContentCatalog.Builder rescan = new ContentCatalog.Builder();
+        rescan.put(added, 2, libraryPath(2));
+        assertNotNull(catalog.get(kept)); // Scan in progress: the old library is still served
+        assertNull(catalog.get(added));
+
+        catalog.publish(rescan);
+        assertNull(catalog.get(kept));
+        assertNotNull(catalog.get(added));
+    }
+
+    // Memory: heap retained per indexed file, next to the old layout of two
+    // hex-keyed maps (Hash -> FileInfo, Hash -> Path). Path strings are created
+    // up front and shared by both, so only the index overhead is measured.
+    @Test
+    public void bytesPerEntry() {
+        int files = 100_000;
+        Random random = new Random(3);
+        ContentId[] ids = new ContentId[files];
+        Path[] paths = new Path[files];
+        for (int i = 0; i < files; i++) {
+            ids[i] = randomId(random);
+            paths[i] = libraryPath(i);
+            paths[i].toString(); // Path caches its string, which the catalog then shares
+        }
+
+        long before = usedHeap();
+        ContentCatalog.Builder library = new ContentCatalog.Builder();
+        for (int i = 0; i < files; i++)
+            library.put(ids[i], i, paths[i]);
+        ContentCatalog catalog = new ContentCatalog();
+        catalog.publish(library);
+        long catalogBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ConcurrentHashMap<String, FileInfo> localFiles = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Path> localPaths = new ConcurrentHashMap<>();
+        for (int i = 0; i < files; i++) {
+            String hex = ids[i].toHex();
+            localFiles.put(hex, new FileInfo(paths[i].getFileName().toString(), i, hex));
+            localPaths.put(hex, paths[i]);
+        }
+        long mapBytes = usedHeap() - before;
+
+        System.out.println("ContentCatalog: " + catalogBytes / files + " bytes per file, hex-keyed maps "
+                + mapBytes / files + " bytes per file (" + files + " files)");
+        assertEquals(files, catalog.size());
+        assertEquals(files, localFiles.size());
+        assertEquals(files, localPaths.size());
+        assertTrue(catalogBytes < mapBytes);
+        assertTrue(catalogBytes / files < 160);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,70 @@
+package com.cse471.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DownloadSessionTest {
+    private static final int CHUNK = 256 * 1024;
+
+    private static DownloadSession session(int chunks) {
+        return new DownloadSession(new FileInfo("video.mp4", (long) chunks * CHUNK, "hash"), CHUNK);
+    }
+
+    // Sıradaki Parçalar: İndirme döngüsü gibi her parçayı alıp geldi işaretler.
+    private static List<Integer> next(DownloadSession session, int count) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = session.nextChunk();
+            order.add(index);
+            session.markReceived(index);
+        }
+        return order;
+    }
+
+    @Test
+    public void pinnedIndexChunksSurviveASeek() {
+        DownloadSession session = session(100);
+        session.prioritizeRange(98L * CHUNK, 100L * CHUNK, 64); // moov at the end
+        session.seekTo(50L * CHUNK);
+
+        assertEquals(List.of(98, 99, 50, 51, 52, 53, 54), next(session, 7));
+    }
+
+    @Test
+    public void seekDropsOnlyPrioritiesBehindTheNewPosition() {
+        DownloadSession session = session(100);
+        session.requestPriority(10); // Requeued after a busy source, now behind the seek point
+        session.requestPriority(70); // Still ahead of it
+        session.seekTo(40L * CHUNK);
+
+        assertEquals(List.of(40, 41, 42, 43, 70, 44), next(session, 6));
+    }
+
+    @Test
+    public void receivedChunksAreSkipped() {
+        DownloadSession session = session(10);
+        session.prioritizeRange(8L * CHUNK, 10L * CHUNK, 64);
+        session.markReceived(8);
+        session.markReceived(0);
+
+        assertEquals(List.of(9, 1, 2), next(session, 3));
+    }
+
+    @Test
+    public void chunkLostOnDiskIsFetchedAgain() {
+        DownloadSession session = session(4);
+        next(session, 4);
+        assertTrue(session.isComplete());
+
+        session.markLost(2); // Write-behind could not write it
+        assertFalse(session.isComplete());
+        assertFalse(session.hasChunk(2));
+        assertEquals(2, session.nextChunk());
+    }
+}
@@ -0,0 +1,102 @@
+package com.cse471.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReedSolomonTest {
+    private static final int SHARD_SIZE = 1024;
+    private static final int SHORT_TAIL = SHARD_SIZE - 317; // Last chunk of a file is shorter than the group's shards
+
+    // Data blocks of a group; the last one is short, like the tail of a file
+    private static byte[][] dataBlocks(int k, Random random) {
+        byte[][] data = new byte[k][];
+        for (int i = 0; i < k; i++) {
+            data[i] = new byte[i == k - 1 && k > 1 ? SHORT_TAIL : SHARD_SIZE];
+            random.nextBytes(data[i]);
+        }
+        return data;
+    }
+
+    // Encoded the way FileManager.getRepairBlock builds a repair block
+    private static byte[][] repairBlocks(byte[][] data, int m) {
+        int k = data.length;
+        byte[][] parity = new byte[m][SHARD_SIZE];
+        for (int j = 0; j < m; j++) {
+            for (int i = 0; i < k; i++)
+                ReedSolomon.addScaled(parity[j], ByteBuffer.wrap(data[i]), ReedSolomon.coefficient(k, j, i));
+        }
+        return parity;
+    }
+
+    // Every combination of up to m erased blocks, data and repair alike, must
+    // decode back to the original data
+    private static int checkAllErasures(int k, int m, long seed) {
+        byte[][] data = dataBlocks(k, new Random(seed));
+        byte[][] parity = repairBlocks(data, m);
+        int n = k + m;
+        int decoded = 0;
+        for (int erased = 0; erased < 1 << n; erased++) {
+            if (Integer.bitCount(erased) > m)
+                continue;
+            Map<Integer, byte[]> shards = new HashMap<>();
+            for (int s = 0; s < n; s++) {
+                if ((erased & (1 << s)) == 0)
+                    shards.put(s, s < k ? Arrays.copyOf(data[s], SHARD_SIZE) : parity[s - k]); // Zero-padded
+            }
+
+            Map<Integer, byte[]> recovered = ReedSolomon.reconstruct(shards, k, SHARD_SIZE);
+            assertNotNull("k=" + k + " m=" + m + " erased=" + Integer.toBinaryString(erased), recovered);
+            for (int d = 0; d < k; d++) {
+                if ((erased & (1 << d)) == 0)
+                    continue;
+                byte[] block = recovered.get(d);
+                assertEquals(SHARD_SIZE, block.length);
+                assertArrayEquals(data[d], Arrays.copyOf(block, data[d].length));
+                for (int p = data[d].length; p < SHARD_SIZE; p++)
+                    assertEquals("padding of block " + d, 0, block[p]);
+            }
+            decoded++;
+        }
+        return decoded;
+    }
+
+    @Test
+    public void decodesEveryErasurePatternUpToTheRepairCount() {
+        assertEquals(3, checkAllErasures(1, 1, 1)); // 2 choose <=1
+        assertEquals(22, checkAllErasures(4, 2, 2)); // 6 choose <=2
+        assertEquals(130, checkAllErasures(6, 3, 3)); // 9 choose <=3
+        assertEquals(1471, checkAllErasures(10, 4, 4)); // 14 choose <=4
+    }
+
+    @Test
+    public void tooFewBlocksCannotDecode() {
+        int k = 4;
+        int m = 2;
+        byte[][] data = dataBlocks(k, new Random(5));
+        byte[][] parity = repairBlocks(data, m);
+        Map<Integer, byte[]> shards = new HashMap<>();
+        shards.put(0, data[0]);
+        shards.put(k, parity[0]);
+        shards.put(k + 1, parity[1]); // Three of the four needed
+        assertNull(ReedSolomon.reconstruct(shards, k, SHARD_SIZE));
+    }
+
+    @Test
+    public void nothingToRecoverWhenAllDataIsPresent() {
+        byte[][] data = dataBlocks(3, new Random(6));
+        Map<Integer, byte[]> shards = new HashMap<>();
+        for (int i = 0; i < data.length; i++)
+            shards.put(i, Arrays.copyOf(data[i], SHARD_SIZE));
+        assertEquals(0, ReedSolomon.reconstruct(shards, 3, SHARD_SIZE).size());
+    }
+}
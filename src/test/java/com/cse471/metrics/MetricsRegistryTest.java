@@ -0,0 +1,121 @@
+package com.cse471.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+    private final MetricsRegistry registry = MetricsRegistry.getInstance();
+
+    // Exported lines of one metric family (the registry is shared by every test)
+    private List<String> lines(String name) throws IOException {
+        StringWriter text = new StringWriter();
+        registry.writePrometheus(text);
+        List<String> lines = new ArrayList<>();
+        for (String line : text.toString().split("\n")) {
+            if (line.startsWith(name + "_") || line.startsWith(name + "{") || line.startsWith(name + " ")
+                    || line.startsWith("# HELP " + name + " ") || line.startsWith("# TYPE " + name + " "))
+                lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void histogramHasCumulativeBucketsSumAndCount() throws IOException {
+        MetricsRegistry.Histogram histogram = registry.histogram("test_latency_ms", "Test latency");
+        histogram.observe(0.5);
+        histogram.observe(7);
+        histogram.observe(7);
+        histogram.observe(300);
+        histogram.observe(60_000); // Above the last bucket: only in +Inf
+
+        List<String> lines = lines("test_latency_ms");
+        assertEquals("# HELP test_latency_ms Test latency", lines.get(0));
+        assertEquals("# TYPE test_latency_ms histogram", lines.get(1));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"1\"} 1"));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"5\"} 1"));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"10\"} 3"));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"250\"} 3"));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"500\"} 4"));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"10000\"} 4"));
+        assertTrue(lines.contains("test_latency_ms_bucket{le=\"+Inf\"} 5"));
+        assertTrue(lines.contains("test_latency_ms_sum 60314.5"));
+        assertTrue(lines.contains("test_latency_ms_count 5"));
+        assertEquals(2 + 13 + 2, lines.size()); // HELP, TYPE, 12 buckets + Inf, sum, count
+
+        // Buckets are cumulative and in increasing order
+        long previous = 0;
+        for (String line : lines) {
+            if (!line.startsWith("test_latency_ms_bucket"))
+                continue;
+            long value = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            assertTrue(line, value >= previous);
+            previous = value;
+        }
+    }
+
+    @Test
+    public void labelsAreEscapedAndComeBeforeLe() throws IOException {
+        registry.histogram("test_labelled_ms", "Labelled", "route", "via \"relay\" \\ 1").observe(3);
+        registry.counter("test_labelled_total", "Labelled counter", "route", "direct").add(7);
+
+        assertTrue(lines("test_labelled_ms")
+                .contains("test_labelled_ms_bucket{route=\"via \\\"relay\\\" \\\\ 1\",le=\"5\"} 1"));
+        assertTrue(lines("test_labelled_ms").contains("test_labelled_ms_count{route=\"via \\\"relay\\\" \\\\ 1\"} 1"));
+        assertTrue(lines("test_labelled_total").contains("test_labelled_total{route=\"direct\"} 7"));
+    }
+
+    @Test
+    public void countersAndGaugesWriteOneSample() throws IOException {
+        MetricsRegistry.Counter counter = registry.counter("test_requests_total", "Requests");
+        counter.inc();
+        counter.add(4);
+        assertSame(counter, registry.counter("test_requests_total", "Requests"));
+        registry.gauge("test_queue_depth", "Queue depth", () -> 2.5);
+        registry.gauge("test_broken", "Throws", () -> {
+            throw new IllegalStateException();
+        });
+
+        assertTrue(lines("test_requests_total").contains("# TYPE test_requests_total counter"));
+        assertTrue(lines("test_requests_total").contains("test_requests_total 5"));
+        assertTrue(lines("test_queue_depth").contains("# TYPE test_queue_depth gauge"));
+        assertTrue(lines("test_queue_depth").contains("test_queue_depth 2.5"));
+        assertTrue(lines("test_broken").contains("test_broken NaN"));
+    }
+
+    @Test
+    public void labelValuesPastTheCapShareOneSeries() throws IOException {
+        for (int i = 0; i < MetricsRegistry.MAX_SERIES_PER_FAMILY + 50; i++)
+            registry.counter("test_per_peer_total", "Per peer", "peer", "peer-" + i).inc();
+
+        List<String> samples = lines("test_per_peer_total");
+        samples.removeIf(line -> line.startsWith("#"));
+        assertEquals(MetricsRegistry.MAX_SERIES_PER_FAMILY + 1, samples.size());
+        assertTrue(samples.contains("test_per_peer_total{peer=\"other\"} 50"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aNameKeepsItsType() {
+        registry.counter("test_typed", "Typed");
+        registry.histogram("test_typed", "Typed");
+    }
+
+    @Test
+    public void snapshotSummarizesHistograms() {
+        MetricsRegistry.Histogram histogram = registry.histogram("test_snapshot_ms", "Snapshot");
+        histogram.observe(10);
+        histogram.observe(30);
+
+        Map<String, Double> values = registry.snapshot();
+        assertEquals(2.0, values.get("test_snapshot_ms_count"), 0.0);
+        assertEquals(20.0, values.get("test_snapshot_ms_mean"), 0.0);
+    }
+}
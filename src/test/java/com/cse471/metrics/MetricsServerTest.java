@@ -0,0 +1,78 @@
+package com.cse471.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsServerTest {
+    private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+    private final MetricsServer server = new MetricsServer(MetricsRegistry.getInstance());
+    private ObjectName name;
+
+    @Before
+    public void start() throws Exception {
+        name = new ObjectName("com.cse471:type=Metrics");
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void beanExposesOneReadOnlyAttributePerSeries() throws Exception {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.counter("test_jmx_total", "JMX counter").add(3);
+        MetricsRegistry.Histogram histogram = registry.histogram("test_jmx_ms", "JMX histogram");
+        histogram.observe(4);
+        histogram.observe(8);
+
+        assertTrue(mbeans.isRegistered(name));
+        MBeanInfo info = mbeans.getMBeanInfo(name);
+        Set<String> attributes = new HashSet<>();
+        for (MBeanAttributeInfo attribute : info.getAttributes()) {
+            attributes.add(attribute.getName());
+            assertEquals("java.lang.Double", attribute.getType());
+            assertTrue(attribute.isReadable());
+            assertFalse(attribute.isWritable());
+        }
+        assertTrue(attributes.contains("test_jmx_total"));
+        assertTrue(attributes.contains("test_jmx_ms_count"));
+        assertTrue(attributes.contains("test_jmx_ms_mean"));
+
+        assertEquals(3.0, (Double) mbeans.getAttribute(name, "test_jmx_total"), 0.0);
+        assertEquals(2.0, (Double) mbeans.getAttribute(name, "test_jmx_ms_count"), 0.0);
+        assertEquals(6.0, (Double) mbeans.getAttribute(name, "test_jmx_ms_mean"), 0.0);
+
+        AttributeList list = mbeans.getAttributes(name, new String[] { "test_jmx_total", "missing" });
+        assertEquals(1, list.size());
+        assertEquals("test_jmx_total", ((Attribute) list.get(0)).getName());
+    }
+
+    @Test(expected = Exception.class)
+    public void attributesAreReadOnly() throws Exception {
+        mbeans.setAttribute(name, new Attribute("test_jmx_total", 1.0));
+    }
+
+    @Test
+    public void stopUnregistersTheBean() {
+        server.stop();
+        assertFalse(mbeans.isRegistered(name));
+    }
+}
@@ -0,0 +1,52 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    public void longConnectionsDoNotShrinkTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        int initial = limit.getLimit();
+        for (int i = 0; i < initial; i++)
+            assertTrue(limit.tryAcquire());
+        // A pipelined session stays open for minutes; only its fast requests are sampled
+        for (int i = 0; i < 100; i++)
+            limit.sample(5, false);
+        for (int i = 0; i < initial; i++)
+            limit.release();
+
+        assertEquals(0, limit.getInFlight());
+        assertTrue(limit.getLimit() >= initial);
+    }
+
+    @Test
+    public void slowOrFailedRequestsBackOff() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        int initial = limit.getLimit();
+        limit.sample(60_000, false);
+        assertTrue(limit.getLimit() < initial);
+
+        limit.sample(0, true); // Inside the cooldown: one decrease per burst
+        assertEquals((int) (initial * 0.9), limit.getLimit());
+    }
+
+    @Test
+    public void openSessionsAreOverTheLimitOnceItDrops() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        int initial = limit.getLimit();
+        for (int i = 0; i < initial; i++)
+            assertTrue(limit.tryAcquire());
+        assertFalse(limit.isOverLimit()); // Full, but every session was admitted under this limit
+
+        limit.sample(60_000, false);
+        assertTrue(limit.isOverLimit());
+        for (int i = 0; i < initial - limit.getLimit(); i++)
+            limit.release();
+        assertFalse(limit.isOverLimit());
+    }
+}
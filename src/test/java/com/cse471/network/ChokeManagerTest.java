@@ -0,0 +1,69 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class ChokeManagerTest {
+    private static final int SLOTS = 4; // Default -Dp2p.uploadSlots
+
+    private static ChokeManager admitted(String... peers) {
+        ChokeManager manager = new ChokeManager();
+        for (String peer : peers)
+            manager.tryAdmit(peer);
+        return manager;
+    }
+
+    @Test
+    public void freeSlotsAdmitAnyoneThenPeersAreChoked() {
+        ChokeManager manager = admitted("a", "b", "c", "d");
+        assertTrue(manager.tryAdmit("a"));
+        assertFalse(manager.tryAdmit("e"));
+        assertEquals(SLOTS, manager.getUnchoked().size());
+    }
+
+    @Test
+    public void rechokeKeepsTheFastestUploadersToUs() {
+        ChokeManager manager = admitted("a", "b", "c", "d", "e", "f");
+        manager.recordDownloaded("f", 3_000_000);
+        manager.recordDownloaded("e", 2_000_000);
+        manager.recordDownloaded("d", 1_000_000);
+        manager.recordDownloaded("a", 10_000);
+
+        manager.rechoke();
+
+        assertEquals(SLOTS, manager.getUnchoked().size());
+        assertTrue(manager.getUnchoked().containsAll(Arrays.asList("f", "e", "d")));
+        String optimistic = manager.getOptimisticPeer();
+        assertTrue(optimistic, new HashSet<>(Arrays.asList("a", "b", "c")).contains(optimistic));
+    }
+
+    @Test
+    public void optimisticSlotPrefersPeersNeverUnchoked() {
+        for (int i = 0; i < 20; i++) { // The pick is random
+            ChokeManager manager = admitted("a", "b", "c", "d", "new1", "new2");
+            manager.recordDownloaded("a", 3_000_000);
+            manager.recordDownloaded("b", 2_000_000);
+            manager.recordDownloaded("c", 1_000_000);
+
+            manager.rechoke();
+
+            String optimistic = manager.getOptimisticPeer();
+            assertTrue(optimistic, "new1".equals(optimistic) || "new2".equals(optimistic));
+            assertFalse(manager.getUnchoked().contains("d")); // Had its turn already
+        }
+    }
+
+    @Test
+    public void uninterestedUploadersGetNoSlot() {
+        ChokeManager manager = admitted("a");
+        manager.recordDownloaded("seeder", 5_000_000); // Sends us data but never asks for any
+        manager.rechoke();
+        assertEquals(new HashSet<>(Arrays.asList("a")), manager.getUnchoked());
+    }
+}
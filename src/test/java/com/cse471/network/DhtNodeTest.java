@@ -0,0 +1,140 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import com.cse471.file.FileManager;
+
+// In-process DHT: N nodes, each with its own transfer server on loopback
+public class DhtNodeTest {
+    private static final int LOOKUPS = 30;
+    private static final FileManager fileManager = new FileManager(); // Shared, the DHT does not read files
+    private static final List<TransferManager> servers = new ArrayList<>();
+    private static final Random random = new Random(471);
+
+    private static final class Node {
+        final PeerInfo info;
+        final DhtNode dht;
+        final List<String> hashes = Collections.synchronizedList(new ArrayList<>());
+
+        Node(String id, int port) throws IOException {
+            info = new PeerInfo(id, InetAddress.getLoopbackAddress(), port);
+            TransferManager transferManager = new TransferManager(fileManager, port);
+            dht = new DhtNode(id, port, transferManager, () -> new ArrayList<>(hashes));
+            transferManager.setDhtNode(dht);
+            transferManager.startServer();
+            servers.add(transferManager);
+        }
+    }
+
+    @AfterClass
+    public static void stopServers() {
+        for (TransferManager server : servers)
+            server.stop();
+    }
+
+    // Ağ Kur: Her yeni düğüm rastgele bir önceki düğümü tanır ve kendi
+    // kimliğini arayarak (Kademlia join) tablosunu doldurur.
+    private static List<Node> network(String prefix, int size) throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Node node = new Node(prefix + "-" + i, freePort());
+            if (!nodes.isEmpty()) {
+                node.dht.addContact(nodes.get(random.nextInt(nodes.size())).info);
+                node.dht.findProviders(hex(DhtNode.nodeIdOf(node.info.getId())));
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String randomKey() {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        return hex(key);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    // Ortalama Tur: Rastgele düğümlerden rastgele anahtarlar için (sağlayıcısı
+    // olmayan, yani sonuna kadar giden) aramaların ortalama tur sayısı.
+    private static double meanHops(List<Node> nodes, String label) {
+        long hops = 0, contacted = 0, elapsed = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            DhtNode.LookupResult result = nodes.get(random.nextInt(nodes.size())).dht.findProviders(randomKey());
+            assertTrue(result.isConverged());
+            hops += result.getHops();
+            contacted += result.getContacted();
+            elapsed += result.getElapsedMs();
+        }
+        double mean = (double) hops / LOOKUPS;
+        System.out.printf("DHT %s: N=%d, %.2f hops, %.1f nodes contacted, %.1f ms per lookup%n", label,
+                nodes.size(), mean, (double) contacted / LOOKUPS, (double) elapsed / LOOKUPS);
+        return mean;
+    }
+
+    @Test
+    public void findsAPublishedProvider() throws Exception {
+        List<Node> nodes = network("p", 24);
+        Node publisher = nodes.get(5);
+        String hash = randomKey();
+        publisher.hashes.add(hash);
+        publisher.dht.publish(hash);
+
+        DhtNode.LookupResult result = nodes.get(17).dht.findProviders(hash);
+        assertEquals(1, result.getProviders().size());
+        assertEquals(publisher.info.getId(), result.getProviders().get(0).getId());
+        assertTrue(result.getHops() >= 1);
+    }
+
+    @Test
+    public void providerLookupThatStopsEarlyIsNotConverged() throws Exception {
+        List<Node> nodes = network("c", 24);
+        String hash = randomKey();
+        for (Node node : nodes.subList(0, 12)) {
+            node.hashes.add(hash);
+            node.dht.publish(hash);
+        }
+        DhtNode.LookupResult result = nodes.get(20).dht.findProviders(hash);
+        assertFalse(result.getProviders().isEmpty());
+        assertFalse(result.isConverged());
+    }
+
+    // Hop count grows with log N: going from 8 to 128 nodes (4 doublings) adds
+    // only a few rounds, and stays within a small multiple of log2 N
+    @Test
+    public void hopsGrowLogarithmically() throws Exception {
+        double small = meanHops(network("s", 8), "small");
+        double medium = meanHops(network("m", 32), "medium");
+        double large = meanHops(network("l", 128), "large");
+
+        assertTrue("hops should not shrink as the network grows", large >= small);
+        assertTrue("32 nodes: " + medium, medium <= 2 * (Math.log(32) / Math.log(2)));
+        assertTrue("128 nodes: " + large, large <= 2 * (Math.log(128) / Math.log(2)));
+        // Linear growth would take 16x the rounds of the 8-node network
+        assertTrue("growth from 8 to 128 nodes: " + small + " -> " + large, large <= small * 4);
+    }
+}
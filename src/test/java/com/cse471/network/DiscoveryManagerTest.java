@@ -0,0 +1,109 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DiscoveryManagerTest {
+    private static final String PEER_ID = "Peer-1a2b3c4d";
+
+    // The PeerID as a peer running the original discovery code reads it: every
+    // byte after the 8-byte header, whatever the flags say
+    private static String baselinePeerId(byte[] data, int length) {
+        return new String(data, 8, length - 8, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void v1AnnouncementKeepsTheOriginalLayout() throws Exception {
+        InetAddress ip = InetAddress.getByName("192.168.1.20");
+        byte[] payload = DiscoveryManager.buildPayload(0, 6123, ip, PEER_ID);
+
+        assertEquals(8 + PEER_ID.length(), payload.length);
+        assertEquals(PEER_ID, baselinePeerId(payload, payload.length));
+        assertEquals(6123, ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF));
+        assertEquals(ip, InetAddress.getByAddress(Arrays.copyOfRange(payload, 4, 8)));
+    }
+
+    @Test
+    public void v1AnnouncementFitsTheOriginalReceiveBuffer() throws Exception {
+        byte[] payload = DiscoveryManager.buildPayload(0, 6123, InetAddress.getByName("10.0.0.1"), PEER_ID);
+        byte[] received = Arrays.copyOf(payload, 1024); // Receive buffer of the original listener
+        assertEquals(PEER_ID, baselinePeerId(received, payload.length));
+    }
+
+    @Test
+    public void newParserReadsBaselineAnnouncements() throws Exception {
+        byte[] id = PEER_ID.getBytes(StandardCharsets.UTF_8);
+        byte[] baseline = new byte[8 + id.length];
+        baseline[0] = 0x01;
+        baseline[3] = 100;
+        System.arraycopy(InetAddress.getByName("10.0.0.7").getAddress(), 0, baseline, 4, 4);
+        System.arraycopy(id, 0, baseline, 8, id.length);
+
+        DiscoveryManager.Announcement a = DiscoveryManager.parseV1(baseline, baseline.length);
+        assertNotNull(a);
+        assertEquals(PEER_ID, a.peerId);
+        assertEquals(100, a.port);
+        assertNull(a.seq);
+    }
+
+    @Test
+    public void extensionRoundTripsSequenceAndCatalog() throws Exception {
+        InetAddress ip = InetAddress.getByName("172.16.0.5");
+        byte[] filter = BloomFilter.of(Arrays.asList("aa", "bb")).toBytes();
+        byte[] payload = DiscoveryManager.buildExtension(2, 6500, ip, -7, 42, filter, PEER_ID);
+
+        DiscoveryManager.Announcement a = DiscoveryManager.parseExtension(payload, payload.length);
+        assertNotNull(a);
+        assertEquals(PEER_ID, a.peerId);
+        assertEquals(ip, a.address);
+        assertEquals(6500, a.port);
+        assertEquals(2, a.ttl);
+        assertEquals(Integer.valueOf(-7), a.seq);
+        assertEquals(Integer.valueOf(42), a.catalogVersion);
+        assertTrue(a.filter.mightContain("aa"));
+    }
+
+    @Test
+    public void extensionWithoutCatalogCarriesOnlyTheSequence() throws Exception {
+        byte[] payload = DiscoveryManager.buildExtension(0, 6500, InetAddress.getByName("172.16.0.5"), 9, -1, null,
+                PEER_ID);
+        DiscoveryManager.Announcement a = DiscoveryManager.parseExtension(payload, payload.length);
+        assertNotNull(a);
+        assertEquals(PEER_ID, a.peerId);
+        assertEquals(Integer.valueOf(9), a.seq);
+        assertNull(a.catalogVersion);
+    }
+
+    @Test
+    public void extensionParserRejectsV1Packets() throws Exception {
+        byte[] payload = DiscoveryManager.buildPayload(0, 6123, InetAddress.getByName("10.0.0.1"), PEER_ID);
+        assertNull(DiscoveryManager.parseExtension(payload, payload.length));
+    }
+
+    @Test
+    public void forwardBudgetIsPerOrigin() {
+        DiscoveryManager discovery = new DiscoveryManager(PEER_ID, 6123, null);
+        // Hundreds of honest peers each announcing once are all forwarded
+        for (int i = 0; i < 500; i++)
+            assertTrue(discovery.allowForward("Peer-" + i));
+
+        // A peer flooding fresh sequence numbers only exhausts its own budget
+        int forwarded = 0;
+        for (int i = 0; i < 100; i++) {
+            if (discovery.allowForward("Peer-flood"))
+                forwarded++;
+        }
+        assertTrue(forwarded < 10);
+        assertFalse(discovery.allowForward("Peer-flood"));
+        assertTrue(discovery.allowForward("Peer-honest"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PeerManagerTest {
+    private final PeerManager peerManager = PeerManager.getInstance();
+
+    @After
+    public void removeTestPeers() {
+        for (String id : new String[] { "pm-a", "pm-b", "pm-c" })
+            peerManager.removePeer(id);
+    }
+
+    private static PeerInfo peer(String id, String ip, int port, String relay) throws Exception {
+        PeerInfo peer = new PeerInfo(id, InetAddress.getByName(ip), port);
+        if (relay != null)
+            peer.setRelayAddress(InetAddress.getByName(relay));
+        return peer;
+    }
+
+    @Test
+    public void removingAPeerFallsBackToAnotherOnTheSameIp() throws Exception {
+        InetAddress ip = InetAddress.getByName("10.9.0.1");
+        PeerInfo a = peer("pm-a", "10.9.0.1", 6001, null);
+        PeerInfo b = peer("pm-b", "10.9.0.1", 6002, null);
+        peerManager.addPeer(a);
+        peerManager.addPeer(b);
+        assertSame(a, peerManager.getPeerByIp(ip));
+
+        peerManager.removePeer("pm-a");
+        assertSame(b, peerManager.getPeerByIp(ip));
+        peerManager.removePeer("pm-b");
+        assertNull(peerManager.getPeerByIp(ip));
+    }
+
+    @Test
+    public void directPeerIsPreferredForItsIp() throws Exception {
+        InetAddress ip = InetAddress.getByName("10.9.0.2");
+        PeerInfo relayed = peer("pm-a", "10.9.0.2", 6001, "10.9.0.254");
+        PeerInfo direct = peer("pm-b", "10.9.0.2", 6002, null);
+        peerManager.addPeer(relayed);
+        peerManager.addPeer(direct);
+        assertSame(direct, peerManager.getPeerByIp(ip));
+    }
+
+    @Test
+    public void unchangedReannouncementKeepsTheCachedView() throws Exception {
+        peerManager.addPeer(peer("pm-c", "10.9.0.3", 6003, null));
+        peerManager.heartbeat("pm-c");
+        java.util.List<PeerInfo> view = peerManager.getPeersByHealth();
+        assertTrue(view.stream().anyMatch(p -> p.getId().equals("pm-c")));
+
+        assertFalse(peerManager.addPeer(peer("pm-c", "10.9.0.3", 6003, null)));
+        assertSame(view, peerManager.getPeersByHealth());
+
+        // A changed port is an update and rebuilds the view
+        assertFalse(peerManager.addPeer(peer("pm-c", "10.9.0.3", 6004, null)));
+        assertEquals(6004, peerManager.getPeer("pm-c").getCommandPort());
+    }
+}
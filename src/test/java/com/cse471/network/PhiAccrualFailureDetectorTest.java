@@ -0,0 +1,44 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PhiAccrualFailureDetectorTest {
+    private static final long INTERVAL_MS = 5000;
+    private static final double DEAD_PHI = 16.0; // PeerManager's eviction threshold
+
+    @Test
+    public void peerWithoutHeartbeatsStillExpires() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(INTERVAL_MS);
+        long now = System.currentTimeMillis();
+        detector.track("learned-by-gossip"); // Added, but never announces itself to us
+
+        assertTrue(detector.phi("learned-by-gossip", now + INTERVAL_MS) < 1.0);
+        assertTrue(detector.phi("learned-by-gossip", now + 60_000) >= DEAD_PHI);
+        assertEquals(0.0, detector.phi("unknown", now + 60_000), 0.0);
+    }
+
+    @Test
+    public void trackingKeepsAnOlderDatedSighting() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(INTERVAL_MS);
+        long seen = System.currentTimeMillis() - 20_000;
+        detector.heartbeat("relayed", seen); // Gossip: seen 20 s ago by someone else
+        detector.track("relayed");
+
+        assertTrue(detector.millisSinceLastHeartbeat("relayed") >= 20_000);
+    }
+
+    @Test
+    public void regularHeartbeatsKeepPhiLow() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(INTERVAL_MS);
+        long start = System.currentTimeMillis() - 100 * INTERVAL_MS;
+        for (int i = 0; i < 100; i++)
+            detector.heartbeat("direct", start + i * INTERVAL_MS);
+        long last = start + 99 * INTERVAL_MS;
+
+        assertTrue(detector.phi("direct", last + INTERVAL_MS) < 1.0);
+        assertTrue(detector.phi("direct", last + 10 * INTERVAL_MS) >= DEAD_PHI);
+    }
+}
@@ -0,0 +1,56 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void refillIsProportionalToElapsedTimeAndCapped() {
+        TokenBucket bucket = new TokenBucket(100, 50, clock::get);
+        assertTrue(bucket.tryAcquire(50)); // Starts full
+        assertFalse(bucket.tryAcquire(1));
+
+        clock.addAndGet(SECOND / 10);
+        assertEquals(10.0, bucket.getAvailableTokens(), 1e-6);
+        assertFalse(bucket.tryAcquire(11)); // Not enough yet, nothing taken
+        assertTrue(bucket.tryAcquire(10));
+
+        clock.addAndGet(10 * SECOND); // A long idle gap only refills up to the burst
+        assertEquals(50.0, bucket.getAvailableTokens(), 1e-6);
+    }
+
+    @Test
+    public void oversizedAcquireRunsIntoDebt() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 50, clock::get);
+        bucket.acquire(200); // Larger than the burst: passes on a full bucket
+        assertEquals(-150.0, bucket.getAvailableTokens(), 1e-6);
+
+        // Later senders wait until the debt is paid off
+        clock.addAndGet(SECOND);
+        assertEquals(-50.0, bucket.getAvailableTokens(), 1e-6);
+        assertFalse(bucket.tryAcquire(1));
+        clock.addAndGet(SECOND / 2);
+        assertEquals(0.0, bucket.getAvailableTokens(), 1e-6);
+        clock.addAndGet(SECOND / 100);
+        assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void acquireWaitsForTheMissingTokens() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 100); // Real clock
+        bucket.acquire(100);
+        long start = System.nanoTime();
+        bucket.acquire(50);
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("waited " + waitedMs + " ms", waitedMs >= 40);
+    }
+}
@@ -0,0 +1,91 @@
+package com.cse471.network;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class UploadSchedulerTest {
+    private static final long GLOBAL_KBPS = 4096;
+    private static final long RUN_MS = 1500;
+
+    // Sender threads that keep one slice at a time waiting for the scheduler
+    private static Thread sender(UploadScheduler scheduler, String peer, int slice, AtomicLong sent,
+            AtomicBoolean done) {
+        Thread t = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    scheduler.acquire(peer, slice);
+                    if (!done.get())
+                        sent.addAndGet(slice);
+                }
+            } catch (InterruptedException e) {
+                // Test over
+            }
+        });
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static double shareOfSecond(UploadScheduler scheduler, int firstThreads, int firstSlice,
+            int secondThreads, int secondSlice) throws InterruptedException {
+        AtomicLong first = new AtomicLong();
+        AtomicLong second = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < firstThreads; i++)
+            threads.add(sender(scheduler, "10.0.0.1", firstSlice, first, done));
+        for (int i = 0; i < secondThreads; i++)
+            threads.add(sender(scheduler, "10.0.0.2", secondSlice, second, done));
+
+        scheduler.start();
+        for (Thread t : threads)
+            t.start();
+        Thread.sleep(RUN_MS);
+        done.set(true);
+        scheduler.stop();
+        for (Thread t : threads)
+            t.join(1000);
+        return (double) second.get() / (first.get() + second.get());
+    }
+
+    // Under a shared limit a peer with more parallel requests does not get more
+    // of the bandwidth: each backlogged peer gets one quantum per round
+    @Test(timeout = 10_000)
+    public void backloggedPeersShareTheLimitEqually() throws InterruptedException {
+        UploadScheduler scheduler = new UploadScheduler(GLOBAL_KBPS, 0);
+        double share = shareOfSecond(scheduler, 4, UploadScheduler.QUANTUM, 1, UploadScheduler.QUANTUM);
+        assertTrue("second peer's share " + share, share > 0.35 && share < 0.65); // FIFO would give it 0.2
+    }
+
+    // Fairness is in bytes, not requests: small slices are not starved by large ones
+    @Test(timeout = 10_000)
+    public void fairnessCountsBytesNotRequests() throws InterruptedException {
+        UploadScheduler scheduler = new UploadScheduler(GLOBAL_KBPS, 0);
+        int small = UploadScheduler.QUANTUM / 4;
+        double share = shareOfSecond(scheduler, 2, UploadScheduler.QUANTUM, 8, small);
+        assertTrue("small-slice peer's share " + share, share > 0.3 && share < 0.7);
+    }
+
+    @Test(timeout = 10_000)
+    public void perPeerLimitCapsEachPeer() throws InterruptedException {
+        UploadScheduler scheduler = new UploadScheduler(0, 256);
+        AtomicLong sent = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread t = sender(scheduler, "10.0.0.3", UploadScheduler.QUANTUM, sent, done);
+        scheduler.start();
+        t.start();
+        Thread.sleep(1000);
+        done.set(true);
+        scheduler.stop();
+        t.join(1000);
+
+        // 256 KB/s plus the initial 64 KB burst, with room for timing noise
+        long kb = sent.get() / 1024;
+        assertTrue("sent " + kb + " KB", kb >= 128 && kb <= 448);
+    }
+}
@@ -0,0 +1,152 @@
+package com.cse471.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class Mp4ProbeTest {
+    private static final int CHUNK = 4096;
+
+    private static ByteBuffer chunk() {
+        return ByteBuffer.allocate(CHUNK);
+    }
+
+    private static void header(ByteBuffer b, long size, String type) {
+        b.putInt((int) size);
+        for (int i = 0; i < 4; i++)
+            b.put((byte) type.charAt(i));
+    }
+
+    private static void ftyp(ByteBuffer b) {
+        header(b, 24, "ftyp");
+        b.put(new byte[16]);
+    }
+
+    // Version 0 mvhd: timescale and duration after version/flags and two timestamps
+    private static void mvhd(ByteBuffer b, int timescale, int duration) {
+        header(b, 8 + 100, "mvhd");
+        b.putInt(0);
+        b.putInt(0);
+        b.putInt(0);
+        b.putInt(timescale);
+        b.putInt(duration);
+        b.put(new byte[80]);
+    }
+
+    private static ByteBuffer done(ByteBuffer b) {
+        b.position(CHUNK);
+        b.flip();
+        return b;
+    }
+
+    @Test
+    public void moovFirstGivesTheDuration() {
+        ByteBuffer b = chunk();
+        ftyp(b);
+        header(b, 8 + 16 + 108, "moov");
+        header(b, 16, "iods"); // A child before mvhd
+        b.put(new byte[8]);
+        mvhd(b, 1000, 95_500);
+        header(b, 1_000_000, "mdat");
+
+        Mp4Probe probe = Mp4Probe.probe(done(b), 2_000_000);
+        assertEquals(24, probe.getMoovOffset());
+        assertEquals(95_500, probe.getDurationMs());
+    }
+
+    @Test
+    public void moovAtEndPointsPastTheMediaData() {
+        ByteBuffer b = chunk();
+        ftyp(b);
+        header(b, 1_000_000, "mdat");
+
+        Mp4Probe probe = Mp4Probe.probe(done(b), 1_200_000);
+        assertEquals(24 + 1_000_000, probe.getMoovOffset());
+        assertEquals(0, probe.getDurationMs());
+
+        // The chunk holding that offset yields the duration
+        ByteBuffer tail = chunk();
+        tail.put(new byte[100]);
+        header(tail, 8 + 108, "moov");
+        mvhd(tail, 600, 6000);
+        assertEquals(10_000, Mp4Probe.parseMoovDuration(done(tail), 100));
+    }
+
+    @Test
+    public void largeSizeUsesTheSixtyFourBitField() {
+        ByteBuffer b = chunk();
+        ftyp(b);
+        header(b, 1, "mdat");
+        b.putLong(5_000_000_000L);
+
+        Mp4Probe probe = Mp4Probe.probe(done(b), 6_000_000_000L);
+        assertEquals(24 + 5_000_000_000L, probe.getMoovOffset());
+    }
+
+    @Test
+    public void sizeZeroRunsToTheEndOfTheFile() {
+        ByteBuffer b = chunk();
+        ftyp(b);
+        header(b, 0, "mdat"); // Nothing after it, so no index to fetch
+
+        assertEquals(-1, Mp4Probe.probe(done(b), 1_000_000).getMoovOffset());
+
+        ByteBuffer moov = chunk();
+        ftyp(moov);
+        header(moov, 8 + 108, "moov");
+        header(moov, 0, "mvhd"); // Last child may run to the end of its parent
+        moov.putInt(0);
+        moov.putInt(0);
+        moov.putInt(0);
+        moov.putInt(25);
+        moov.putInt(250);
+        assertEquals(10_000, Mp4Probe.probe(done(moov), 1_000_000).getDurationMs());
+    }
+
+    // Reproduces a peer-supplied header whose child box size wraps an int:
+    // the walk must stop instead of stepping backwards forever
+    @Test(timeout = 2000)
+    public void malformedChildSizesStopTheWalk() {
+        ByteBuffer b = chunk();
+        ftyp(b);
+        header(b, 8 + 16 + 16, "moov");
+        header(b, 16, "iods");
+        b.put(new byte[8]);
+        header(b, 0xFFFFFFF0L, "trak");
+        assertEquals(0, Mp4Probe.probe(done(b), 1_000_000).getDurationMs());
+
+        ByteBuffer small = chunk();
+        ftyp(small);
+        header(small, 8 + 8, "moov");
+        header(small, 4, "trak"); // Smaller than its own header
+        assertEquals(0, Mp4Probe.probe(done(small), 1_000_000).getDurationMs());
+
+        ByteBuffer negative = chunk();
+        ftyp(negative);
+        header(negative, 8 + 16, "moov");
+        header(negative, 1, "trak");
+        negative.putLong(-32); // 64-bit size with the sign bit set
+        assertEquals(0, Mp4Probe.probe(done(negative), 1_000_000).getDurationMs());
+    }
+
+    @Test
+    public void malformedTopLevelSizesKeepSequentialOrder() {
+        ByteBuffer tooSmall = chunk();
+        ftyp(tooSmall);
+        header(tooSmall, 3, "mdat");
+        assertEquals(-1, Mp4Probe.probe(done(tooSmall), 1_000_000).getMoovOffset());
+
+        ByteBuffer pastEnd = chunk();
+        ftyp(pastEnd);
+        header(pastEnd, 1, "mdat");
+        pastEnd.putLong(Long.MAX_VALUE); // Would overflow the offset
+        assertEquals(-1, Mp4Probe.probe(done(pastEnd), 1_000_000).getMoovOffset());
+
+        ByteBuffer notMp4 = chunk();
+        header(notMp4, 24, "RIFF");
+        assertNull(Mp4Probe.probe(done(notMp4), 1_000_000));
+    }
+}